@@ -51,38 +51,44 @@ val targets = listOf(
 //    ZigTargetTriple.X86_64_MACOS_NONE TODO MacOS
 )
 
+// The on-demand variant only records while a Tracy viewer is connected
+val variants = mapOf("" to false, "-onDemand" to true)
+
 targets.forEach { target ->
     val targetStr = target.resolve()
-    val prefix = layout.buildDirectory.dir("zig-build/$targetStr")
     val mod = minecraft_fp.mod
-    val buildTask = tasks.register<ZigBuildTask>("buildNatives-$targetStr") {
-        options {
-            steps.add("install")
-            this.target = target
-            optimize = ZigBuildOptions.Optimization.ReleaseSmall
-            compilerArgs.add(mod.modid.map { "-Dmod_id=$it" })
-            compilerArgs.add(mod.name.map { "-Dmod_name=$it" })
-            compilerArgs.add(mod.version.map { "-Dmod_version=$it" })
-            compilerArgs.add(mod.rootPkg.map { "-Droot_pkg=$it" })
-            compilerArgs.add("-Dstrip")
+    variants.forEach { (suffix, onDemand) ->
+        val prefix = layout.buildDirectory.dir("zig-build/$targetStr$suffix")
+        val buildTask = tasks.register<ZigBuildTask>("buildNatives-$targetStr$suffix") {
+            options {
+                steps.add("install")
+                this.target = target
+                optimize = ZigBuildOptions.Optimization.ReleaseSmall
+                compilerArgs.add(mod.modid.map { "-Dmod_id=$it" })
+                compilerArgs.add(mod.name.map { "-Dmod_name=$it" })
+                compilerArgs.add(mod.version.map { "-Dmod_version=$it" })
+                compilerArgs.add(mod.rootPkg.map { "-Droot_pkg=$it" })
+                compilerArgs.add("-Dstrip")
+                compilerArgs.add("-Dtracy_on_demand=$onDemand")
+            }
+            workingDirectory = layout.projectDirectory
+            prefixDirectory = prefix
+            clearPrefixDirectory = true
+            sourceFiles.from(layout.projectDirectory.dir("src/main/zig"))
+            sourceFiles.from(layout.projectDirectory.file("build.zig"))
+            sourceFiles.from(layout.projectDirectory.file("build.zig.zon"))
         }
-        workingDirectory = layout.projectDirectory
-        prefixDirectory = prefix
-        clearPrefixDirectory = true
-        sourceFiles.from(layout.projectDirectory.dir("src/main/zig"))
-        sourceFiles.from(layout.projectDirectory.file("build.zig"))
-        sourceFiles.from(layout.projectDirectory.file("build.zig.zon"))
-    }
-    tasks.named<ProcessResources>("processResources") {
-        dependsOn(buildTask)
-        into("/natives") {
-            if (target.os == ZigOperatingSystemTarget.WINDOWS) {
-                from(prefix.map { it.dir("bin") })
-            } else {
-                from(prefix.map { it.dir("lib") })
+        tasks.named<ProcessResources>("processResources") {
+            dependsOn(buildTask)
+            into("/natives") {
+                if (target.os == ZigOperatingSystemTarget.WINDOWS) {
+                    from(prefix.map { it.dir("bin") })
+                } else {
+                    from(prefix.map { it.dir("lib") })
+                }
+                include("*.dll", "*.so")
+                rename("(\\w+)\\.(dll|so)", "$1-${targetStr}.$2")
             }
-            include("*.dll", "*.so")
-            rename("(\\w+)\\.(dll|so)", "$1-${targetStr}.$2")
         }
     }
 }
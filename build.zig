@@ -4,6 +4,7 @@ pub fn build(b: *std.Build) !void {
     const target = b.standardTargetOptions(.{});
     const optimize = b.standardOptimizeOption(.{});
     const strip = b.option(bool, "strip", "Strip debug symbols from the resulting binaries to minimize size");
+    const on_demand = b.option(bool, "tracy_on_demand", "Only record while a Tracy viewer is connected") orelse false;
     const opt = Opt.of(b);
     opt.add([]const u8, "mod_id", "Mod ID", "examplemod");
     opt.add([]const u8, "mod_name", "Mod Name", "Example Mod");
@@ -23,10 +24,12 @@ pub fn build(b: *std.Build) !void {
         .tracy_no_crash_handler = true,
         .tracy_delayed_init = true,
         .tracy_manual_lifetime = true,
+        .tracy_on_demand = on_demand,
     });
 
     const lib = b.addSharedLibrary(.{
-        .name = "Tracy",
+        // Both variants are shipped side by side, the Java side picks one when loading
+        .name = if (on_demand) "TracyOnDemand" else "Tracy",
         .root_source_file = b.path("src/main/zig/Tracy.zig"),
         .target = target,
         .optimize = optimize,
@@ -42,6 +45,16 @@ pub fn build(b: *std.Build) !void {
     lib.linkLibCpp();
 
     b.installArtifact(lib);
+
+    const bench = b.addExecutable(.{
+        .name = "intern_pool_bench",
+        .root_source_file = b.path("src/main/zig/intern_pool_bench.zig"),
+        .target = target,
+        .optimize = optimize,
+    });
+    const run_bench = b.addRunArtifact(bench);
+    const bench_step = b.step("bench", "Run the intern pool contention benchmark");
+    bench_step.dependOn(&run_bench.step);
 }
 
 const Opt = struct {
@@ -0,0 +1,149 @@
+/*
+ * This file is part of MEGATrace.
+ *
+ * Copyright (C) 2024-2025 The MEGA Team
+ * All Rights Reserved
+ *
+ * The above copyright notice, this permission notice and the word "MEGA"
+ * shall be included in all copies or substantial portions of the Software.
+ *
+ * MEGATrace is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, only version 3 of the License.
+ *
+ * MEGATrace is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with MEGATrace.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package mega.trace;
+
+import lombok.val;
+
+/**
+ * Settings read from {@code -Dmegatrace.<name>=<value>} system properties at startup.
+ */
+public final class Config {
+    private static final String PREFIX = "megatrace.";
+
+    /**
+     * Load the natives built in Tracy's on-demand mode, which only record while a viewer is connected. Producers on
+     * the Java side then skip their work too, see {@link mega.trace.common.ViewerConnection}.
+     */
+    public static final boolean ON_DEMAND = getBoolean("onDemand", false);
+
+    /**
+     * Have the GPU write query results into a persistently mapped buffer, instead of reading each query back with a
+     * blocking {@code glGetQueryObjectui64}.
+     */
+    public static final boolean GPU_QUERY_BUFFER = getBoolean("gpu.queryBuffer", true);
+
+    /**
+     * Upper bound on GPU zones in flight. Zones are allocated in chunks as needed, and past this cap new zones are
+     * dropped and counted instead.
+     */
+    public static final int GPU_MAX_ZONES = getInt("gpu.maxZones", 16384);
+
+    /**
+     * When the GPU falls too many frames behind, drop the oldest frame's pending results instead of waiting for it.
+     */
+    public static final boolean GL_ASYNC_NEVER_STALL = getBoolean("gl.asyncNeverStall", false);
+
+    /**
+     * Bounds for frame images. The framebuffer is scaled down to fit, keeping its aspect ratio.
+     */
+    public static final int SCREENSHOT_MAX_WIDTH = getInt("screenshot.maxWidth", 320);
+    public static final int SCREENSHOT_MAX_HEIGHT = getInt("screenshot.maxHeight", 240);
+
+    /**
+     * Number of recent frames kept on the GPU, sent when a lag spike is detected.
+     */
+    public static final int SCREENSHOT_HISTORY = getInt("screenshot.history", 8);
+
+    /**
+     * A frame taking longer than this sends the kept frames.
+     */
+    public static final int SCREENSHOT_FRAME_TIME_THRESHOLD_MS = getInt("screenshot.frameTimeThresholdMs", 50);
+
+    /**
+     * An integrated server tick taking longer than this sends the kept frames.
+     */
+    public static final int SCREENSHOT_TICK_TIME_THRESHOLD_MS = getInt("screenshot.tickTimeThresholdMs", 50);
+
+    /**
+     * Outside of lag spikes, only every this many frames is sent. 1 sends every frame, 0 only sends around spikes.
+     */
+    public static final int SCREENSHOT_INTERVAL = getInt("screenshot.interval", 30);
+
+    /**
+     * Read frame images from a persistently mapped buffer. Disabling maps and unmaps it for every image instead, the
+     * way it used to, to compare the two with the {@code gl_screenshotReadbackMs} plot.
+     */
+    public static final boolean SCREENSHOT_PERSISTENT_MAP = getBoolean("screenshot.persistentMap", true);
+
+    /**
+     * How often heap, allocation rate and direct memory are plotted.
+     */
+    public static final int MEMORY_SAMPLE_INTERVAL_MS = getInt("memory.sampleIntervalMs", 10);
+
+    /**
+     * Track LWJGL {@code MemoryUtil} allocations and direct byte buffers in Tracy memory pools.
+     */
+    public static final boolean OFFHEAP_TRACKING = getBoolean("offheap.tracking", false);
+
+    /**
+     * With off-heap tracking, on average every this many allocations the calling method is sent as a message.
+     */
+    public static final int OFFHEAP_SAMPLE_INTERVAL = Math.max(1, getInt("offheap.sampleInterval", 256));
+
+    /**
+     * Most entity and tile entity classes given their own tick cost plots, the costliest ones first. The rest are
+     * added up into {@code sv_cost_other}. Plots share a registry of 1024 with everything else.
+     */
+    public static final int TICK_COSTS_MAX_CLASSES = Math.max(0, getInt("tickCosts.maxClasses", 64));
+
+    /**
+     * File listing methods to wrap in zones at class load, see {@link mega.trace.transform.InstrumentationConfig}.
+     * Relative paths are resolved against the game directory.
+     */
+    public static final String INSTRUMENT_FILE = getString("instrument.file", "config/megatrace/instrument.cfg");
+
+    /**
+     * Comma separated section names, with {@code *} wildcards. When set, only matching sections and what is under
+     * them are traced.
+     */
+    public static final String FILTER_INCLUDE = getString("filter.include", "");
+
+    /**
+     * Comma separated section names, with {@code *} wildcards. Matching sections and what is under them are not
+     * traced.
+     */
+    public static final String FILTER_EXCLUDE = getString("filter.exclude", "");
+
+    /**
+     * Maximum zone depth per profiler, as comma separated {@code prefix=depth} pairs, e.g. {@code cl_=24,gl_=8}.
+     */
+    public static final String FILTER_MAX_DEPTH = getString("filter.maxDepth", "");
+
+    /**
+     * Zones started per section name each frame or tick, past which the section is skipped. 0 is unlimited.
+     */
+    public static final int FILTER_MAX_PER_FRAME = getInt("filter.maxPerFrame", 0);
+
+    private static boolean getBoolean(String name, boolean defaultValue) {
+        val value = System.getProperty(PREFIX + name);
+        return value == null ? defaultValue : Boolean.parseBoolean(value);
+    }
+
+    private static String getString(String name, String defaultValue) {
+        return System.getProperty(PREFIX + name, defaultValue);
+    }
+
+    private static int getInt(String name, int defaultValue) {
+        return Integer.getInteger(PREFIX + name, defaultValue);
+    }
+}
@@ -23,6 +23,10 @@
 package mega.trace;
 
 import lombok.val;
+import mega.trace.common.GCTracker;
+import mega.trace.common.MemorySampler;
+import mega.trace.common.OffHeapTracker;
+import mega.trace.common.ViewerConnection;
 import mega.trace.natives.Tracy;
 import mega.trace.service.MEGATraceService;
 
@@ -30,6 +34,8 @@ import cpw.mods.fml.common.Mod;
 import cpw.mods.fml.common.event.FMLPreInitializationEvent;
 
 import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
 
 @Mod(modid = Tags.MOD_ID,
@@ -53,23 +59,32 @@ public class MEGATrace {
 
         Share.log.info("Attempting to load natives");
 
+        final Thread tracyInitThread;
         try {
             val internalErr = new AtomicReference<Throwable>();
+            val initialized = new CountDownLatch(1);
             // This is done on a seperate thread, as Tracy will treat the thread on which `Tracy.load()` is called
             // As the "Main Thread" and does not support renaming it. Launching it on a separate thread lets us
             // work around this limitation, so we can mark the `client` and `server` threads.
-            val tracyInitThread = new Thread(() -> {
+            tracyInitThread = new Thread(() -> {
                 try {
                     Tracy.load();
                     Tracy.init();
                 } catch (Throwable t) {
                     internalErr.set(t);
+                    return;
+                } finally {
+                    initialized.countDown();
                 }
+                // Afterwards the thread stays around to sample JVM telemetry, until interrupted on shutdown
+                GCTracker.install();
+                MemorySampler.run();
             });
             tracyInitThread.setName("Tracy Init");
+            tracyInitThread.setDaemon(true);
 
             tracyInitThread.start();
-            tracyInitThread.join(5_000);
+            initialized.await(5_000, TimeUnit.MILLISECONDS);
 
             val t = internalErr.get();
             if (t != null) {
@@ -79,11 +94,21 @@ public class MEGATrace {
             throw new RuntimeException("Failed to load natives", t);
         }
 
-        val tracyDeinitThread = new Thread(Tracy::deinit);
+        val tracyDeinitThread = new Thread(() -> {
+            // Stop sampling first, so nothing is sent after Tracy shuts down
+            tracyInitThread.interrupt();
+            try {
+                tracyInitThread.join(1_000);
+            } catch (InterruptedException ignored) {
+            }
+            Tracy.deinit();
+        });
         tracyDeinitThread.setName("Tracy Deinit");
         Runtime.getRuntime().addShutdownHook(tracyDeinitThread);
 
         Share.log.info("Successfully loaded natives");
         nativesLoaded = true;
+        OffHeapTracker.ready();
+        ViewerConnection.startPolling();
     }
 }
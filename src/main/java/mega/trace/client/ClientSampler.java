@@ -0,0 +1,59 @@
+/*
+ * This file is part of MEGATrace.
+ *
+ * Copyright (C) 2024-2025 The MEGA Team
+ * All Rights Reserved
+ *
+ * The above copyright notice, this permission notice and the word "MEGA"
+ * shall be included in all copies or substantial portions of the Software.
+ *
+ * MEGATrace is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, only version 3 of the License.
+ *
+ * MEGATrace is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with MEGATrace.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package mega.trace.client;
+
+import lombok.val;
+import mega.trace.common.Plot;
+import mega.trace.common.ViewerConnection;
+
+import net.minecraft.client.Minecraft;
+
+/**
+ * Plots frame time and what the client world holds, once per frame.
+ */
+public final class ClientSampler {
+    private final Plot frameTimePlot = new Plot("cl_frameMs");
+    private final Plot chunksPlot = new Plot("cl_chunks", Plot.Format.NUMBER, true, true, 0);
+    private final Plot entitiesPlot = new Plot("cl_entities", Plot.Format.NUMBER, true, true, 0);
+    private final Plot tileEntitiesPlot = new Plot("cl_tileEntities", Plot.Format.NUMBER, true, true, 0);
+
+    private long lastFrameNanos = System.nanoTime();
+
+    public void sample(Minecraft mc) {
+        val now = System.nanoTime();
+        val frameNanos = now - lastFrameNanos;
+        lastFrameNanos = now;
+        if (!ViewerConnection.connected()) {
+            return;
+        }
+        frameTimePlot.plot(frameNanos / 1_000_000.0);
+
+        val world = mc.theWorld;
+        if (world == null) {
+            return;
+        }
+        chunksPlot.plot(world.getChunkProvider().getLoadedChunkCount());
+        entitiesPlot.plot(world.loadedEntityList.size());
+        tileEntitiesPlot.plot(world.loadedTileEntityList.size());
+    }
+}
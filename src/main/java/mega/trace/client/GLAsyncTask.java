@@ -28,4 +28,10 @@ public interface GLAsyncTask {
 
     default void end(int currentFrame) {
     }
+
+    /**
+     * Called instead of {@link #end(int)} when the results are abandoned instead of waited for.
+     */
+    default void drop(int currentFrame) {
+    }
 }
@@ -27,6 +27,12 @@ import it.unimi.dsi.fastutil.objects.ObjectArrayFIFOQueue;
 import lombok.Getter;
 import lombok.experimental.Accessors;
 import lombok.val;
+import mega.trace.Config;
+import mega.trace.common.Plot;
+import mega.trace.common.ViewerConnection;
+import mega.trace.natives.Tracy;
+
+import java.util.Arrays;
 
 import static org.lwjgl.opengl.GL46C.GL_SYNC_FLUSH_COMMANDS_BIT;
 import static org.lwjgl.opengl.GL46C.GL_SYNC_GPU_COMMANDS_COMPLETE;
@@ -35,32 +41,71 @@ import static org.lwjgl.opengl.GL46C.glClientWaitSync;
 import static org.lwjgl.opengl.GL46C.glDeleteSync;
 import static org.lwjgl.opengl.GL46C.glFenceSync;
 
+/**
+ * Runs {@link GLAsyncTask}s once the GPU has finished the frame they were queued in.
+ * <p>
+ * Frames whose fence hasn't signaled yet are kept in flight, up to a window sized from the observed fence latency.
+ * When the window is full, the oldest frame is either waited for, or with {@link Config#GL_ASYNC_NEVER_STALL} its
+ * tasks are dropped without their results.
+ */
 @Accessors(fluent = true,
            chain = false)
 public final class GLAsyncTasks {
     private static final int MAX_SYNC_COUNT = 32;
     private static final int FUTURE_SYNC_MIN_DELAY = 0;
-    private static final int FUTURE_SYNC_MAX_DELAY = 8;
+    private static final int FUTURE_SYNC_MIN_WINDOW = 2;
+    private static final int FUTURE_SYNC_INITIAL_WINDOW = 8;
     private static final int PAST_SYNC_DELAY = 8;
+    private static final int INITIAL_GPU_TIME_CAPACITY = 1024;
+
+    // Weight of each new sample in the fence latency average, and frames of slack on top of it
+    private static final float LATENCY_SMOOTHING = 0.1f;
+    private static final int LATENCY_HEADROOM = 2;
 
     @Getter
     private static GLAsyncTasks instance;
 
     private final int futureSyncMinDelay;
-    private final int futureSyncMaxDelay;
+    private final int futureSyncMaxWindow;
     private final int pastSyncDelay;
+    private final boolean neverStall;
 
     private final PriorityQueue<GLSyncTaskQueue> syncPool;
     private final PriorityQueue<GLSyncTaskQueue> futureSync;
     private final PriorityQueue<GLSyncTaskQueue> pastSync;
 
     private GLSyncTaskQueue currentSync;
+    @Getter
     private int currentFrame;
 
-    public GLAsyncTasks(int maxSyncCount, int futureSyncMinDelay, int futureSyncMaxDelay, int pastSyncDelay) {
+    // Query id and timestamp pairs retired this frame, submitted with a single native call
+    private long[] gpuTimes = new long[INITIAL_GPU_TIME_CAPACITY * 2];
+    private int gpuTimeCount;
+
+    // Average number of frames between queueing a fence and seeing it signaled
+    @Getter
+    private float fenceLatency;
+    @Getter
+    private int futureSyncWindow;
+    @Getter
+    private long stallNanos;
+    @Getter
+    private long droppedTasks;
+
+    private long stallNanosThisFrame;
+    private int droppedTasksThisFrame;
+
+    private final Plot fenceLatencyPlot = new Plot("gl_asyncFenceLatency");
+    private final Plot windowPlot = new Plot("gl_asyncWindow");
+    private final Plot stallPlot = new Plot("gl_asyncStallMs");
+    private final Plot droppedTasksPlot = new Plot("gl_asyncDroppedTasks");
+
+    public GLAsyncTasks(int maxSyncCount, int futureSyncMinDelay, int pastSyncDelay, boolean neverStall) {
         this.futureSyncMinDelay = futureSyncMinDelay;
-        this.futureSyncMaxDelay = futureSyncMaxDelay;
+        // One sync is always being recorded, and past syncs are held on to before returning to the pool
+        this.futureSyncMaxWindow = maxSyncCount - pastSyncDelay - 1;
         this.pastSyncDelay = pastSyncDelay;
+        this.neverStall = neverStall;
 
         this.syncPool = new ObjectArrayFIFOQueue<>(maxSyncCount);
         // Pre-allocate sync objects
@@ -73,11 +118,14 @@ public final class GLAsyncTasks {
 
         this.currentSync = syncPool.dequeue();
         this.currentFrame = 0;
+
+        this.futureSyncWindow = Math.min(FUTURE_SYNC_INITIAL_WINDOW, futureSyncMaxWindow);
+        this.fenceLatency = futureSyncWindow - LATENCY_HEADROOM;
     }
 
     public static void init() {
         if (instance == null) {
-            instance = new GLAsyncTasks(MAX_SYNC_COUNT, FUTURE_SYNC_MIN_DELAY, FUTURE_SYNC_MAX_DELAY, PAST_SYNC_DELAY);
+            instance = new GLAsyncTasks(MAX_SYNC_COUNT, FUTURE_SYNC_MIN_DELAY, PAST_SYNC_DELAY, Config.GL_ASYNC_NEVER_STALL);
         }
     }
 
@@ -85,15 +133,34 @@ public final class GLAsyncTasks {
         currentSync.queueTask(task);
     }
 
+    public void queueGPUTime(short queryId, long gpuTime) {
+        val i = gpuTimeCount * 2;
+        if (i == gpuTimes.length) {
+            gpuTimes = Arrays.copyOf(gpuTimes, gpuTimes.length * 2);
+        }
+        gpuTimes[i] = queryId;
+        gpuTimes[i + 1] = gpuTime;
+        gpuTimeCount++;
+    }
+
     public void preRender() {
-        while(futureSync.size() > futureSyncMinDelay) {
-            val task = futureSync.first();
-            val doHardSync = futureSync.size() >= futureSyncMaxDelay;
-            if (task.tryRun(doHardSync)) {
-                pastSync.enqueue(futureSync.dequeue());
+        while (futureSync.size() > futureSyncMinDelay) {
+            val sync = futureSync.first();
+            if (sync.tryRun()) {
+                observeLatency(currentFrame - sync.frame);
+            } else if (futureSync.size() >= futureSyncWindow) {
+                if (neverStall) {
+                    sync.drop();
+                    // Not signaled yet, so the latency is at least one frame more than it has been in flight
+                    observeLatency(currentFrame - sync.frame + 1);
+                } else {
+                    sync.run();
+                    observeLatency(currentFrame - sync.frame);
+                }
             } else {
                 break;
             }
+            pastSync.enqueue(futureSync.dequeue());
         }
 
         while (pastSync.size() > pastSyncDelay) {
@@ -101,19 +168,52 @@ public final class GLAsyncTasks {
             sync.reset();
             syncPool.enqueue(sync);
         }
+
+        if (gpuTimeCount > 0) {
+            Tracy.gpuTimeBatch(gpuTimes, gpuTimeCount);
+            gpuTimeCount = 0;
+        }
+
+        plotStats();
     }
 
     public void postRender() {
+        if (currentSync.tasks.isEmpty() && !ViewerConnection.connected()) {
+            // Nothing to wait for, so no fence either
+            currentFrame++;
+            return;
+        }
         currentSync.postRender();
         futureSync.enqueue(currentSync);
         currentSync = syncPool.dequeue();
         currentFrame++;
     }
 
+    private void observeLatency(int frames) {
+        fenceLatency += (frames - fenceLatency) * LATENCY_SMOOTHING;
+        val window = (int) Math.ceil(fenceLatency) + LATENCY_HEADROOM;
+        futureSyncWindow = Math.max(FUTURE_SYNC_MIN_WINDOW, Math.min(window, futureSyncMaxWindow));
+    }
+
+    private void plotStats() {
+        if (!ViewerConnection.connected()) {
+            stallNanosThisFrame = 0;
+            droppedTasksThisFrame = 0;
+            return;
+        }
+        fenceLatencyPlot.plot(fenceLatency);
+        windowPlot.plot(futureSyncWindow);
+        stallPlot.plot(stallNanosThisFrame / 1_000_000.0);
+        droppedTasksPlot.plot(droppedTasksThisFrame);
+        stallNanosThisFrame = 0;
+        droppedTasksThisFrame = 0;
+    }
+
     private class GLSyncTaskQueue {
         final PriorityQueue<GLAsyncTask> tasks = new ObjectArrayFIFOQueue<>();
 
         long sync = 0L;
+        int frame;
 
         void queueTask(GLAsyncTask task) {
             task.start(currentFrame);
@@ -122,24 +222,51 @@ public final class GLAsyncTasks {
 
         void postRender() {
             sync = glFenceSync(GL_SYNC_GPU_COMMANDS_COMPLETE, 0);
+            frame = currentFrame;
         }
 
-        boolean tryRun(boolean doHardSync) {
-            // Hard Sync will wait for maximum time, otherwise wait for 0ns
-            val waitNs = doHardSync ? Long.MAX_VALUE : 0L;
-
+        /**
+         * Runs all tasks if the GPU is done with them, without waiting.
+         */
+        boolean tryRun() {
             // Check status
             // GL_SYNC_FLUSH_COMMANDS_BIT is used to insert a 'glFlush' into the stream after the sync
             // Which will ensure that the sync will be reached 'eventually'
-            val status = glClientWaitSync(sync, GL_SYNC_FLUSH_COMMANDS_BIT, waitNs);
+            val status = glClientWaitSync(sync, GL_SYNC_FLUSH_COMMANDS_BIT, 0L);
             if (status == GL_TIMEOUT_EXPIRED) {
                 return false;
             }
-            // Run all tasks
+            runTasks();
+            return true;
+        }
+
+        /**
+         * Waits for the GPU to be done with all tasks, then runs them.
+         */
+        void run() {
+            val start = System.nanoTime();
+            glClientWaitSync(sync, GL_SYNC_FLUSH_COMMANDS_BIT, Long.MAX_VALUE);
+            val stalled = System.nanoTime() - start;
+            stallNanos += stalled;
+            stallNanosThisFrame += stalled;
+            runTasks();
+        }
+
+        /**
+         * Gives up on all tasks without waiting for their results.
+         */
+        void drop() {
+            while (!tasks.isEmpty()) {
+                tasks.dequeue().drop(currentFrame);
+                droppedTasks++;
+                droppedTasksThisFrame++;
+            }
+        }
+
+        void runTasks() {
             while (!tasks.isEmpty()) {
                 tasks.dequeue().end(currentFrame);
             }
-            return true;
         }
 
         void reset() {
@@ -147,4 +274,4 @@ public final class GLAsyncTasks {
             glDeleteSync(sync);
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,167 @@
+/*
+ * This file is part of MEGATrace.
+ *
+ * Copyright (C) 2024-2025 The MEGA Team
+ * All Rights Reserved
+ *
+ * The above copyright notice, this permission notice and the word "MEGA"
+ * shall be included in all copies or substantial portions of the Software.
+ *
+ * MEGATrace is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, only version 3 of the License.
+ *
+ * MEGATrace is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with MEGATrace.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package mega.trace.client;
+
+import it.unimi.dsi.fastutil.longs.Long2LongOpenHashMap;
+import lombok.val;
+import mega.trace.natives.Tracy;
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.lwjgl.opengl.GL46C.GL_ARRAY_BUFFER;
+import static org.lwjgl.opengl.GL46C.GL_ARRAY_BUFFER_BINDING;
+import static org.lwjgl.opengl.GL46C.GL_DEPTH24_STENCIL8;
+import static org.lwjgl.opengl.GL46C.GL_DEPTH32F_STENCIL8;
+import static org.lwjgl.opengl.GL46C.GL_DEPTH_COMPONENT32F;
+import static org.lwjgl.opengl.GL46C.GL_ELEMENT_ARRAY_BUFFER;
+import static org.lwjgl.opengl.GL46C.GL_ELEMENT_ARRAY_BUFFER_BINDING;
+import static org.lwjgl.opengl.GL46C.GL_R16F;
+import static org.lwjgl.opengl.GL46C.GL_R32F;
+import static org.lwjgl.opengl.GL46C.GL_R8;
+import static org.lwjgl.opengl.GL46C.GL_RG16F;
+import static org.lwjgl.opengl.GL46C.GL_RG32F;
+import static org.lwjgl.opengl.GL46C.GL_RGB16F;
+import static org.lwjgl.opengl.GL46C.GL_RGB32F;
+import static org.lwjgl.opengl.GL46C.GL_RGBA16;
+import static org.lwjgl.opengl.GL46C.GL_RGBA16F;
+import static org.lwjgl.opengl.GL46C.GL_RGBA32F;
+import static org.lwjgl.opengl.GL46C.GL_TEXTURE_BINDING_2D;
+import static org.lwjgl.opengl.GL46C.glGetInteger;
+
+/**
+ * A Tracy memory pool of GL objects, keyed by object name. Only used from the render thread.
+ * <p>
+ * GL allocations are rare, so where the object isn't passed in, it is looked up from the current binding.
+ */
+public final class GPUMemory {
+    private static final long NOT_ALLOCATED = -1;
+
+    public static final GPUMemory buffers = new GPUMemory("gl_buffers");
+    public static final GPUMemory textures = new GPUMemory("gl_textures");
+    public static final GPUMemory renderbuffers = new GPUMemory("gl_renderbuffers");
+
+    private final int pool;
+    private final Long2LongOpenHashMap sizes = new Long2LongOpenHashMap();
+
+    private GPUMemory(@NotNull String name) {
+        this.pool = Tracy.registerMemoryPool(name.getBytes(StandardCharsets.UTF_8));
+        sizes.defaultReturnValue(NOT_ALLOCATED);
+    }
+
+    /**
+     * Replaces whatever storage the object had.
+     */
+    public void alloc(int object, long size) {
+        if (object <= 0) {
+            return;
+        }
+        val old = sizes.put(object, size);
+        if (old != NOT_ALLOCATED) {
+            Tracy.memFree(pool, object);
+        }
+        Tracy.memAlloc(pool, object, size);
+    }
+
+    /**
+     * Adds to the object's storage, for textures allocated one mip level at a time.
+     */
+    public void grow(int object, long size) {
+        val old = sizes.get(object);
+        alloc(object, old == NOT_ALLOCATED ? size : old + size);
+    }
+
+    public void free(int object) {
+        if (sizes.remove(object) != NOT_ALLOCATED) {
+            Tracy.memFree(pool, object);
+        }
+    }
+
+    /**
+     * Frees every object between the buffer's position and limit, without moving it.
+     */
+    public void free(@NotNull IntBuffer objects) {
+        for (int i = objects.position(), limit = objects.limit(); i < limit; i++) {
+            free(objects.get(i));
+        }
+    }
+
+    /**
+     * For {@code glBufferData} calls, which only know the binding target.
+     */
+    public static void bufferData(int target, long size) {
+        final int binding;
+        switch (target) {
+            case GL_ARRAY_BUFFER:
+                binding = GL_ARRAY_BUFFER_BINDING;
+                break;
+            case GL_ELEMENT_ARRAY_BUFFER:
+                binding = GL_ELEMENT_ARRAY_BUFFER_BINDING;
+                break;
+            default:
+                return;
+        }
+        buffers.alloc(glGetInteger(binding), size);
+    }
+
+    /**
+     * For {@code glTexImage2D} calls on the bound 2D texture.
+     */
+    public static void texImage2D(int level, int internalFormat, int width, int height) {
+        val size = (long) width * height * bytesPerPixel(internalFormat);
+        val texture = glGetInteger(GL_TEXTURE_BINDING_2D);
+        if (level == 0) {
+            textures.alloc(texture, size);
+        } else {
+            textures.grow(texture, size);
+        }
+    }
+
+    /**
+     * An estimate, drivers are free to pad formats.
+     */
+    public static int bytesPerPixel(int internalFormat) {
+        switch (internalFormat) {
+            case GL_R8:
+                return 1;
+            case GL_R16F:
+                return 2;
+            case GL_RGBA16:
+            case GL_RGBA16F:
+            case GL_RGB16F:
+            case GL_RG32F:
+            case GL_DEPTH32F_STENCIL8:
+                return 8;
+            case GL_RGBA32F:
+            case GL_RGB32F:
+                return 16;
+            case GL_R32F:
+            case GL_RG16F:
+            case GL_DEPTH24_STENCIL8:
+            case GL_DEPTH_COMPONENT32F:
+            default:
+                return 4;
+        }
+    }
+}
@@ -29,12 +29,17 @@ import it.unimi.dsi.fastutil.objects.ObjectArrayList;
 import lombok.Getter;
 import lombok.val;
 import me.eigenraven.lwjgl3ify.api.Lwjgl3Aware;
+import mega.trace.Config;
+import mega.trace.Share;
+import mega.trace.common.Plot;
 import mega.trace.common.TracyProfiler;
+import mega.trace.common.ViewerConnection;
+import mega.trace.common.ZoneRegistry;
 import mega.trace.common.colors.Lch;
 import mega.trace.common.colors.Palette;
-import mega.trace.common.colors.Rgb;
 import mega.trace.natives.Tracy;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import static org.lwjgl.opengl.GL46C.GL_QUERY_RESULT;
 import static org.lwjgl.opengl.GL46C.GL_TIMESTAMP;
@@ -44,25 +49,58 @@ import static org.lwjgl.opengl.GL46C.glGetQueryObjectui64;
 import static org.lwjgl.opengl.GL46C.glQueryCounter;
 
 public final class GPUProfiler implements TracyProfiler {
+    private static final int ZONE_CHUNK_SIZE = 256;
+
     @Getter
-    private static final TracyProfiler instance = new GPUProfiler();
+    private static final GPUProfiler instance = new GPUProfiler();
 
     private static int lastTimeSync = 0;
 
-    private final PriorityQueue<GPUZone> zonePool;
+    private final PriorityQueue<GPUZone> zonePool = new ObjectArrayFIFOQueue<>(ZONE_CHUNK_SIZE);
+    // Dropped zones are pushed as null, so begin and end stay balanced
     private final AbstractObjectList<GPUZone> zones = new ObjectArrayList<>();
 
+    private final int maxZones = Config.GPU_MAX_ZONES;
+    private int allocatedZones = 0;
+    private int droppedZonesThisFrame = 0;
+    @Getter
+    private long droppedZones = 0;
+    // Most recent timestamp read back, a floor for the time dropped zones are closed at
+    private long lastGpuTime;
+    // GPU time read when zones were first dropped in dropFrame, shared by the rest dropped in that frame
+    private long dropGpuTime;
+    private int dropFrame = -1;
+
+    private final Plot zonesInFlightPlot = new Plot("gl_zonesInFlight");
+    private final Plot zonesAllocatedPlot = new Plot("gl_zonesAllocated");
+    private final Plot zonesDroppedPlot = new Plot("gl_zonesDropped");
+
     private GPUProfiler() {
-        this.zonePool = new ObjectArrayFIFOQueue<>(16384);
-        for (var i = 0; i < 16384; i++) {
-            zonePool.enqueue(new GPUZone());
-        }
+        allocateZones();
 
         val gpuTime = glGetInteger64(GL_TIMESTAMP);
         Tracy.gpuInit(gpuTime);
+        lastGpuTime = gpuTime;
+    }
+
+    /**
+     * Reports pool occupancy and the zones dropped since the last call, meant to be called once per frame.
+     */
+    public void plotStats() {
+        if (!ViewerConnection.connected()) {
+            droppedZonesThisFrame = 0;
+            return;
+        }
+        zonesInFlightPlot.plot(allocatedZones - zonePool.size());
+        zonesAllocatedPlot.plot(allocatedZones);
+        zonesDroppedPlot.plot(droppedZonesThisFrame);
+        droppedZonesThisFrame = 0;
     }
 
     public static void timeSync() {
+        if (!ViewerConnection.connected()) {
+            return;
+        }
         lastTimeSync++;
         if (lastTimeSync > 100) {
             val gpuTime = glGetInteger64(GL_TIMESTAMP);
@@ -77,51 +115,158 @@ public final class GPUProfiler implements TracyProfiler {
             0.0018235666f, 0.2772051f
     );
 
+    @Getter
+    private final ZoneRegistry zoneRegistry = new ZoneRegistry(prefix(), palette);
+
     @Override
     public String prefix() {
         return "gl_";
     }
 
+    @Override
+    public void beginZone(@NotNull String name) {
+        if (!ViewerConnection.connected()) {
+            // Pushed like a dropped zone, so the end stays balanced
+            zones.push(null);
+            return;
+        }
+        val depth = zones.size();
+        val id = zoneRegistry.zoneId(name, depth);
+        if (id == ZoneRegistry.INVALID_ID) {
+            beginZone(zoneRegistry.encodedName(name));
+            return;
+        }
+        val zone = pushZone();
+        if (zone != null) {
+            zone.gpuBeginZone(id);
+        }
+    }
+
     @Override
     public void beginZone(byte @NotNull [] name) {
-        val zone = zonePool.dequeue();
-        // TODO palette
-        zone.gpuBeginZone(name, Rgb.fromPalette(palette, zones.size()).toArgbInt());
-        zones.push(zone);
+        if (!ViewerConnection.connected()) {
+            zones.push(null);
+            return;
+        }
+        val depth = zones.size();
+        val zone = pushZone();
+        if (zone != null) {
+            zone.gpuBeginZone(name, palette.argb(depth));
+        }
     }
 
     @Override
     public void endZone() {
         if (!zones.isEmpty()) {
-            zones.pop().gpuEndZone();
+            val zone = zones.pop();
+            if (zone != null) {
+                zone.gpuEndZone();
+            }
         }
     }
 
+    /**
+     * @return The zone pushed onto the stack, or null if the pool is at capacity and the zone was dropped.
+     */
+    @Nullable
+    private GPUZone pushZone() {
+        if (zonePool.isEmpty() && !allocateZones()) {
+            if (droppedZones == 0) {
+                Share.log.warn("GPU zone pool reached its cap of {} zones, further zones are dropped until some retire. " +
+                               "Use -Dmegatrace.gpu.maxZones to raise it.", maxZones);
+            }
+            droppedZones++;
+            droppedZonesThisFrame++;
+            zones.push(null);
+            return null;
+        }
+        val zone = zonePool.dequeue();
+        zones.push(zone);
+        return zone;
+    }
+
+    private boolean allocateZones() {
+        val count = Math.min(ZONE_CHUNK_SIZE, maxZones - allocatedZones);
+        if (count <= 0) {
+            return false;
+        }
+        // Each zone owns two consecutive slots for its push and pop timestamps
+        val queryBuffer = Config.GPU_QUERY_BUFFER ? new GPUQueryBuffer(count * 2) : null;
+        for (var i = 0; i < count; i++) {
+            zonePool.enqueue(new GPUZone(queryBuffer, i * 2));
+        }
+        allocatedZones += count;
+        return true;
+    }
+
     private class GPUZone implements GLAsyncTask {
         final int glQueryPush = glGenQueries();
         final int glQueryPop = glGenQueries();
 
+        @Nullable
+        final GPUQueryBuffer queryBuffer;
+        final int querySlot;
+
         short queryIdPush;
         short queryIdPop;
 
+        GPUZone(@Nullable GPUQueryBuffer queryBuffer, int querySlot) {
+            this.queryBuffer = queryBuffer;
+            this.querySlot = querySlot;
+        }
+
         void gpuBeginZone(byte[] name, int color) {
             queryIdPush = Tracy.gpuBeginZone(name, color);
             glQueryCounter(glQueryPush, GL_TIMESTAMP);
         }
 
+        void gpuBeginZone(int zoneId) {
+            queryIdPush = Tracy.gpuBeginZoneById(zoneId);
+            glQueryCounter(glQueryPush, GL_TIMESTAMP);
+        }
+
         void gpuEndZone() {
             glQueryCounter(glQueryPop, GL_TIMESTAMP);
             queryIdPop = Tracy.gpuEndZone();
+            if (queryBuffer != null) {
+                queryBuffer.write(glQueryPush, querySlot);
+                queryBuffer.write(glQueryPop, querySlot + 1);
+            }
             GLAsyncTasks.instance().queueTask(this);
         }
 
         @Override
         public void end(int currentFrame) {
-            val gpuTimePush = glGetQueryObjectui64(glQueryPush, GL_QUERY_RESULT);
-            val gpuTimePop = glGetQueryObjectui64(glQueryPop, GL_QUERY_RESULT);
+            final long gpuTimePush;
+            final long gpuTimePop;
+            if (queryBuffer != null) {
+                // The frame's fence has signaled, so the results have landed in the buffer
+                gpuTimePush = queryBuffer.read(querySlot);
+                gpuTimePop = queryBuffer.read(querySlot + 1);
+            } else {
+                gpuTimePush = glGetQueryObjectui64(glQueryPush, GL_QUERY_RESULT);
+                gpuTimePop = glGetQueryObjectui64(glQueryPop, GL_QUERY_RESULT);
+            }
 
-            Tracy.gpuTime(queryIdPush, gpuTimePush);
-            Tracy.gpuTime(queryIdPop, gpuTimePop);
+            val tasks = GLAsyncTasks.instance();
+            tasks.queueGPUTime(queryIdPush, gpuTimePush);
+            tasks.queueGPUTime(queryIdPop, gpuTimePop);
+            lastGpuTime = gpuTimePop;
+
+            zonePool.enqueue(this);
+        }
+
+        @Override
+        public void drop(int currentFrame) {
+            // Tracy still needs both timestamps to close the zone, so it is shown as zero-length. Its frame's fence
+            // has not signaled, so the zone runs no earlier than now, rather than at the last time read back
+            if (dropFrame != currentFrame) {
+                dropGpuTime = Math.max(glGetInteger64(GL_TIMESTAMP), lastGpuTime);
+                dropFrame = currentFrame;
+            }
+            val tasks = GLAsyncTasks.instance();
+            tasks.queueGPUTime(queryIdPush, dropGpuTime);
+            tasks.queueGPUTime(queryIdPop, dropGpuTime);
 
             zonePool.enqueue(this);
         }
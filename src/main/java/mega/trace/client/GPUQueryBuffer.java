@@ -0,0 +1,63 @@
+/*
+ * This file is part of MEGATrace.
+ *
+ * Copyright (C) 2024-2025 The MEGA Team
+ * All Rights Reserved
+ *
+ * The above copyright notice, this permission notice and the word "MEGA"
+ * shall be included in all copies or substantial portions of the Software.
+ *
+ * MEGATrace is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, only version 3 of the License.
+ *
+ * MEGATrace is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with MEGATrace.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package mega.trace.client;
+
+import lombok.val;
+import org.lwjgl.system.MemoryUtil;
+
+import static org.lwjgl.opengl.GL46C.GL_MAP_COHERENT_BIT;
+import static org.lwjgl.opengl.GL46C.GL_MAP_PERSISTENT_BIT;
+import static org.lwjgl.opengl.GL46C.GL_MAP_READ_BIT;
+import static org.lwjgl.opengl.GL46C.GL_QUERY_RESULT;
+import static org.lwjgl.opengl.GL46C.glCreateBuffers;
+import static org.lwjgl.opengl.GL46C.glGetQueryBufferObjectui64v;
+import static org.lwjgl.opengl.GL46C.glNamedBufferStorage;
+import static org.lwjgl.opengl.GL46C.nglMapNamedBufferRange;
+
+/**
+ * A persistently mapped buffer the GPU writes query results into (ARB_query_buffer_object).
+ * <p>
+ * Writing a result is queued in the command stream and never blocks, and once a fence issued after the write has
+ * signaled, the result can be read as plain memory.
+ */
+final class GPUQueryBuffer {
+    private static final int MAP_FLAGS = GL_MAP_READ_BIT | GL_MAP_PERSISTENT_BIT | GL_MAP_COHERENT_BIT;
+
+    private final int buffer;
+    private final long address;
+
+    GPUQueryBuffer(int slots) {
+        val size = (long) slots * Long.BYTES;
+        this.buffer = glCreateBuffers();
+        glNamedBufferStorage(buffer, size, MAP_FLAGS);
+        this.address = nglMapNamedBufferRange(buffer, 0L, size, MAP_FLAGS);
+    }
+
+    void write(int query, int slot) {
+        glGetQueryBufferObjectui64v(query, buffer, GL_QUERY_RESULT, (long) slot * Long.BYTES);
+    }
+
+    long read(int slot) {
+        return MemoryUtil.memGetLong(address + (long) slot * Long.BYTES);
+    }
+}
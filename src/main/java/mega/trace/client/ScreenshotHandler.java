@@ -28,6 +28,9 @@ import lombok.Getter;
 import lombok.experimental.Accessors;
 import lombok.val;
 import me.eigenraven.lwjgl3ify.api.Lwjgl3Aware;
+import mega.trace.Config;
+import mega.trace.common.Plot;
+import mega.trace.common.ViewerConnection;
 import mega.trace.natives.Tracy;
 
 import net.minecraft.client.Minecraft;
@@ -37,10 +40,11 @@ import static org.lwjgl.opengl.GL46C.GL_CLIENT_STORAGE_BIT;
 import static org.lwjgl.opengl.GL46C.GL_COLOR_ATTACHMENT0;
 import static org.lwjgl.opengl.GL46C.GL_COLOR_BUFFER_BIT;
 import static org.lwjgl.opengl.GL46C.GL_LINEAR;
+import static org.lwjgl.opengl.GL46C.GL_MAP_COHERENT_BIT;
+import static org.lwjgl.opengl.GL46C.GL_MAP_PERSISTENT_BIT;
 import static org.lwjgl.opengl.GL46C.GL_MAP_READ_BIT;
 import static org.lwjgl.opengl.GL46C.GL_PACK_ALIGNMENT;
 import static org.lwjgl.opengl.GL46C.GL_PIXEL_PACK_BUFFER;
-import static org.lwjgl.opengl.GL46C.GL_READ_ONLY;
 import static org.lwjgl.opengl.GL46C.GL_RGBA;
 import static org.lwjgl.opengl.GL46C.GL_RGBA8;
 import static org.lwjgl.opengl.GL46C.GL_TEXTURE_2D;
@@ -50,13 +54,16 @@ import static org.lwjgl.opengl.GL46C.glBlitNamedFramebuffer;
 import static org.lwjgl.opengl.GL46C.glCreateBuffers;
 import static org.lwjgl.opengl.GL46C.glCreateFramebuffers;
 import static org.lwjgl.opengl.GL46C.glCreateTextures;
+import static org.lwjgl.opengl.GL46C.glDeleteBuffers;
+import static org.lwjgl.opengl.GL46C.glDeleteFramebuffers;
+import static org.lwjgl.opengl.GL46C.glDeleteTextures;
 import static org.lwjgl.opengl.GL46C.glGetTextureImage;
 import static org.lwjgl.opengl.GL46C.glNamedBufferStorage;
 import static org.lwjgl.opengl.GL46C.glNamedFramebufferTexture;
 import static org.lwjgl.opengl.GL46C.glPixelStorei;
 import static org.lwjgl.opengl.GL46C.glTextureStorage2D;
 import static org.lwjgl.opengl.GL46C.glUnmapNamedBuffer;
-import static org.lwjgl.opengl.GL46C.nglMapNamedBuffer;
+import static org.lwjgl.opengl.GL46C.nglMapNamedBufferRange;
 
 @Accessors(fluent = true,
            chain = false)
@@ -93,83 +100,317 @@ public final class ScreenshotHandler {
     // endregion
 
     private static final int IMAGE_POOL_SIZE = 16;
-    private static final short IMAGE_WIDTH = 320;
-    private static final short IMAGE_HEIGHT = 240;
+
+    private static final int MAP_FLAGS = GL_MAP_READ_BIT | GL_MAP_PERSISTENT_BIT | GL_MAP_COHERENT_BIT;
+    private static final boolean PERSISTENT_MAP = Config.SCREENSHOT_PERSISTENT_MAP;
 
     @Getter
-    private static final ScreenshotHandler instance = new ScreenshotHandler(MC_FRAMEBUFFER, IMAGE_POOL_SIZE, IMAGE_WIDTH, IMAGE_HEIGHT);
+    private static final ScreenshotHandler instance = new ScreenshotHandler(MC_FRAMEBUFFER,
+                                                                            IMAGE_POOL_SIZE,
+                                                                            Config.SCREENSHOT_MAX_WIDTH,
+                                                                            Config.SCREENSHOT_MAX_HEIGHT);
 
     private final FrameImageSource src;
-    private final PriorityQueue<FrameImage> imagePool;
+    private final int poolSize;
+    private final int maxWidth;
+    private final int maxHeight;
+    private final int historySize;
+
+    private final ScreenshotPolicy policy;
+
+    // Render thread time spent handing finished images to Tracy, plotted once per frame
+    private final Plot readbackPlot = new Plot("gl_screenshotReadbackMs");
+    private long readbackNanos;
 
-    private ScreenshotHandler(FrameImageSource src, int poolSize, short width, short height) {
+    // Rebuilt whenever the source is resized, the old one is deleted once its in-flight images have been sent
+    private Capture capture;
+    // Nothing is captured while disconnected, so state from before is dropped once a viewer connects again
+    private boolean wasConnected;
+
+    private ScreenshotHandler(FrameImageSource src, int poolSize, int maxWidth, int maxHeight) {
         this.src = src;
+        this.poolSize = poolSize;
+        this.maxWidth = maxWidth;
+        this.maxHeight = maxHeight;
 
-        this.imagePool = new ObjectArrayFIFOQueue<>(poolSize);
-        for (var i = 0; i < poolSize; i++) {
-            imagePool.enqueue(new FrameImage(width, height));
-        }
+        // More history than readback slots could never be sent in one go
+        this.historySize = Math.max(1, Math.min(Config.SCREENSHOT_HISTORY, poolSize));
+
+        this.policy = new ScreenshotPolicy(Config.SCREENSHOT_FRAME_TIME_THRESHOLD_MS,
+                                           Config.SCREENSHOT_TICK_TIME_THRESHOLD_MS,
+                                           Config.SCREENSHOT_INTERVAL,
+                                           historySize / 2);
     }
 
     public void queueScreenshot() {
-        if (!imagePool.isEmpty()) {
-            GLAsyncTasks.instance().queueTask(imagePool.dequeue());
+        if (!ViewerConnection.connected()) {
+            wasConnected = false;
+            return;
         }
+        if (!wasConnected) {
+            wasConnected = true;
+            policy.reset();
+            // Its history holds frames from before the viewer disconnected
+            if (capture != null) {
+                capture.retire();
+                capture = null;
+            }
+        }
+        readbackPlot.plot(readbackNanos / 1_000_000.0);
+        readbackNanos = 0;
+        val srcWidth = src.width();
+        val srcHeight = src.height();
+        if (srcWidth <= 0 || srcHeight <= 0) {
+            return;
+        }
+        if (capture == null || capture.srcWidth != srcWidth || capture.srcHeight != srcHeight) {
+            if (capture != null) {
+                capture.retire();
+            }
+            capture = new Capture(srcWidth, srcHeight);
+        }
+        capture.queueScreenshot();
+    }
+
+    /**
+     * Fits the source into the configured bounds without changing its aspect ratio, then snaps to a multiple of 4, as
+     * Tracy compresses frame images in 4x4 blocks.
+     */
+    private static short targetSize(int srcSize, float scale) {
+        return (short) Math.max(4, ((int) (srcSize * scale)) & ~3);
     }
 
-    private class FrameImage implements GLAsyncTask {
+    private static void blit(int srcFbo, int srcWidth, int srcHeight, int dstFbo, int dstWidth, int dstHeight) {
+        // @formatter:off
+        glBlitNamedFramebuffer(srcFbo, dstFbo,
+                               0, 0, srcWidth, srcHeight,
+                               0, 0, dstWidth, dstHeight,
+                               GL_COLOR_BUFFER_BIT, GL_LINEAR);
+        // @formatter:on
+    }
+
+    /**
+     * Everything sized after a particular source resolution.
+     */
+    private class Capture {
+        final short srcWidth;
+        final short srcHeight;
         final short width;
         final short height;
         final int imageSizeBytes;
 
-        final int fbo;
-        final int tex;
+        // Halving steps from the source down to less than twice the target size, so each GL_LINEAR blit averages
+        // 2x2 texels instead of skipping most of them
+        final int[] stepFbos;
+        final int[] stepTexs;
+        final short[] stepWidths;
+        final short[] stepHeights;
+
+        // Recent frames, downscaled and kept on the GPU until the policy decides to send them
+        final HistoryFrame[] history;
+        int historyHead;
+
+        // One persistently mapped ring buffer, with a slot per image. Unmapped without Config#SCREENSHOT_PERSISTENT_MAP
         final int pbo;
+        final long pboAddress;
+        final PriorityQueue<FrameImage> imagePool;
 
-        int capturedFrame;
+        boolean retired;
 
-        FrameImage(short width, short height) {
-            this.width = width;
-            this.height = height;
+        Capture(short srcWidth, short srcHeight) {
+            this.srcWidth = srcWidth;
+            this.srcHeight = srcHeight;
 
-            this.imageSizeBytes = this.width * this.height * 4;
+            val scale = Math.min(1.0f, Math.min((float) maxWidth / srcWidth, (float) maxHeight / srcHeight));
+            this.width = targetSize(srcWidth, scale);
+            this.height = targetSize(srcHeight, scale);
+            this.imageSizeBytes = width * height * 4;
 
-            this.fbo = glCreateFramebuffers();
-            this.tex = glCreateTextures(GL_TEXTURE_2D);
-            this.pbo = glCreateBuffers();
+            var steps = 0;
+            for (int w = srcWidth / 2, h = srcHeight / 2; w > width && h > height; w /= 2, h /= 2) {
+                steps++;
+            }
+            this.stepFbos = new int[steps];
+            this.stepTexs = new int[steps];
+            this.stepWidths = new short[steps];
+            this.stepHeights = new short[steps];
+            for (var i = 0; i < steps; i++) {
+                stepWidths[i] = (short) (srcWidth >> (i + 1));
+                stepHeights[i] = (short) (srcHeight >> (i + 1));
+                stepFbos[i] = glCreateFramebuffers();
+                stepTexs[i] = glCreateTextures(GL_TEXTURE_2D);
+                glTextureStorage2D(stepTexs[i], 1, GL_RGBA8, stepWidths[i], stepHeights[i]);
+                glNamedFramebufferTexture(stepFbos[i], GL_COLOR_ATTACHMENT0, stepTexs[i], 0);
+            }
 
-            glTextureStorage2D(tex, 1, GL_RGBA8, this.width, this.height);
-            glNamedFramebufferTexture(fbo, GL_COLOR_ATTACHMENT0, tex, 0);
+            this.history = new HistoryFrame[historySize];
+            for (var i = 0; i < historySize; i++) {
+                history[i] = new HistoryFrame();
+            }
+            this.historyHead = 0;
+
+            val ringSizeBytes = (long) imageSizeBytes * poolSize;
+            this.pbo = glCreateBuffers();
             // Client-side storage should mean the actual buffer is CPU-Side, but it's a hint not a promise.
-            glNamedBufferStorage(pbo, this.imageSizeBytes, GL_MAP_READ_BIT | GL_CLIENT_STORAGE_BIT);
+            if (PERSISTENT_MAP) {
+                glNamedBufferStorage(pbo, ringSizeBytes, MAP_FLAGS | GL_CLIENT_STORAGE_BIT);
+                this.pboAddress = nglMapNamedBufferRange(pbo, 0L, ringSizeBytes, MAP_FLAGS);
+            } else {
+                glNamedBufferStorage(pbo, ringSizeBytes, GL_MAP_READ_BIT | GL_CLIENT_STORAGE_BIT);
+                this.pboAddress = 0L;
+            }
+
+            this.imagePool = new ObjectArrayFIFOQueue<>(poolSize);
+            for (var i = 0; i < poolSize; i++) {
+                imagePool.enqueue(new FrameImage((long) imageSizeBytes * i));
+            }
 
-            this.capturedFrame = -1;
+            this.retired = false;
         }
 
-        @Override
-        public void start(int currentFrame) {
-            // @formatter:off
-            glBlitNamedFramebuffer(src.fbo(), fbo,
-                                   0, 0, src.width() - 1, src.height() - 1,
-                                   0, 0, width - 1, height - 1,
-                                   GL_COLOR_BUFFER_BIT, GL_LINEAR);
-            // @formatter:on
+        void queueScreenshot() {
+            val tasks = GLAsyncTasks.instance();
+            val latest = history[historyHead];
+            historyHead = (historyHead + 1) % history.length;
+            latest.capture(tasks.currentFrame());
 
-            glBindBuffer(GL_PIXEL_PACK_BUFFER, pbo);
-            glPixelStorei(GL_PACK_ALIGNMENT, 4);
-            glGetTextureImage(tex, 0, GL_RGBA, GL_UNSIGNED_BYTE, imageSizeBytes, 0L);
-            glBindBuffer(GL_PIXEL_PACK_BUFFER, 0);
+            switch (policy.decide()) {
+                case HISTORY: {
+                    // Oldest first, starting right after the frame just captured
+                    for (var i = 0; i < history.length; i++) {
+                        val frame = history[(historyHead + i) % history.length];
+                        if (frame.capturedFrame >= 0 && !frame.sent) {
+                            send(tasks, frame);
+                        }
+                    }
+                    break;
+                }
+                case LATEST: {
+                    send(tasks, latest);
+                    break;
+                }
+            }
+        }
 
-            this.capturedFrame = currentFrame;
+        void send(GLAsyncTasks tasks, HistoryFrame frame) {
+            if (imagePool.isEmpty()) {
+                return;
+            }
+            val image = imagePool.dequeue();
+            image.source = frame;
+            frame.sent = true;
+            tasks.queueTask(image);
         }
 
-        @Override
-        public void end(int currentFrame) {
-            val image = nglMapNamedBuffer(pbo, GL_READ_ONLY);
-            val offset = (byte) (currentFrame - capturedFrame);
-            Tracy.frameImage(offset, image, width, height);
-            glUnmapNamedBuffer(pbo);
-            imagePool.enqueue(this);
+        void release(FrameImage image) {
+            imagePool.enqueue(image);
+            if (retired && imagePool.size() == poolSize) {
+                delete();
+            }
+        }
+
+        void retire() {
+            retired = true;
+            if (imagePool.size() == poolSize) {
+                delete();
+            }
+        }
+
+        void delete() {
+            for (var i = 0; i < stepFbos.length; i++) {
+                glDeleteFramebuffers(stepFbos[i]);
+                glDeleteTextures(stepTexs[i]);
+            }
+            for (val frame : history) {
+                glDeleteFramebuffers(frame.fbo);
+                glDeleteTextures(frame.tex);
+            }
+            if (PERSISTENT_MAP) {
+                glUnmapNamedBuffer(pbo);
+            }
+            glDeleteBuffers(pbo);
+        }
+
+        class HistoryFrame {
+            final int fbo;
+            final int tex;
+
+            int capturedFrame;
+            boolean sent;
+
+            HistoryFrame() {
+                this.fbo = glCreateFramebuffers();
+                this.tex = glCreateTextures(GL_TEXTURE_2D);
+                glTextureStorage2D(tex, 1, GL_RGBA8, width, height);
+                glNamedFramebufferTexture(fbo, GL_COLOR_ATTACHMENT0, tex, 0);
+
+                this.capturedFrame = -1;
+                this.sent = false;
+            }
+
+            void capture(int currentFrame) {
+                var readFbo = src.fbo();
+                int readWidth = srcWidth;
+                int readHeight = srcHeight;
+                for (var i = 0; i < stepFbos.length; i++) {
+                    blit(readFbo, readWidth, readHeight, stepFbos[i], stepWidths[i], stepHeights[i]);
+                    readFbo = stepFbos[i];
+                    readWidth = stepWidths[i];
+                    readHeight = stepHeights[i];
+                }
+                blit(readFbo, readWidth, readHeight, fbo, width, height);
+
+                this.capturedFrame = currentFrame;
+                this.sent = false;
+            }
+        }
+
+        /**
+         * A slot in the ring buffer. The GPU write into the slot is covered by the fence {@link GLAsyncTasks} places
+         * after the frame, so by the time {@link #end(int)} runs the image can be read straight from mapped memory.
+         */
+        class FrameImage implements GLAsyncTask {
+            final long pboOffset;
+
+            HistoryFrame source;
+            int capturedFrame;
+
+            FrameImage(long pboOffset) {
+                this.pboOffset = pboOffset;
+                this.capturedFrame = -1;
+            }
+
+            @Override
+            public void start(int currentFrame) {
+                // Read back now, before the history frame can be overwritten
+                glBindBuffer(GL_PIXEL_PACK_BUFFER, pbo);
+                glPixelStorei(GL_PACK_ALIGNMENT, 4);
+                glGetTextureImage(source.tex, 0, GL_RGBA, GL_UNSIGNED_BYTE, imageSizeBytes, pboOffset);
+                glBindBuffer(GL_PIXEL_PACK_BUFFER, 0);
+
+                this.capturedFrame = source.capturedFrame;
+            }
+
+            @Override
+            public void end(int currentFrame) {
+                val start = System.nanoTime();
+                val offset = (byte) (currentFrame - capturedFrame);
+                // Tracy copies the image before returning, so the slot can be reused right away
+                if (PERSISTENT_MAP) {
+                    Tracy.frameImage(offset, pboAddress + pboOffset, width, height);
+                } else {
+                    val address = nglMapNamedBufferRange(pbo, pboOffset, imageSizeBytes, GL_MAP_READ_BIT);
+                    Tracy.frameImage(offset, address, width, height);
+                    glUnmapNamedBuffer(pbo);
+                }
+                readbackNanos += System.nanoTime() - start;
+                release(this);
+            }
+
+            @Override
+            public void drop(int currentFrame) {
+                release(this);
+            }
         }
     }
 }
@@ -0,0 +1,108 @@
+/*
+ * This file is part of MEGATrace.
+ *
+ * Copyright (C) 2024-2025 The MEGA Team
+ * All Rights Reserved
+ *
+ * The above copyright notice, this permission notice and the word "MEGA"
+ * shall be included in all copies or substantial portions of the Software.
+ *
+ * MEGATrace is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, only version 3 of the License.
+ *
+ * MEGATrace is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with MEGATrace.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package mega.trace.client;
+
+import lombok.val;
+import mega.trace.Config;
+
+import net.minecraft.server.MinecraftServer;
+
+/**
+ * Decides which of the frames kept by {@link ScreenshotHandler} are sent to Tracy.
+ * <p>
+ * A frame that took too long, or an integrated server tick that did, sends every frame still kept on the GPU and the
+ * frames right after it. Otherwise only every {@link Config#SCREENSHOT_INTERVAL}th frame is sent.
+ */
+final class ScreenshotPolicy {
+    enum Decision {
+        SKIP,
+        LATEST,
+        HISTORY
+    }
+
+    private final long frameTimeThresholdNanos;
+    private final long tickTimeThresholdNanos;
+    private final int interval;
+    private final int postTriggerFrames;
+
+    private long lastFrameNanos = 0;
+    private int lastServerTick = -1;
+    private int framesSinceSent = 0;
+    private int postTriggerRemaining = 0;
+
+    ScreenshotPolicy(int frameTimeThresholdMs, int tickTimeThresholdMs, int interval, int postTriggerFrames) {
+        this.frameTimeThresholdNanos = frameTimeThresholdMs * 1_000_000L;
+        this.tickTimeThresholdNanos = tickTimeThresholdMs * 1_000_000L;
+        this.interval = interval;
+        this.postTriggerFrames = postTriggerFrames;
+    }
+
+    /**
+     * Forgets the previous frame and any pending triggers, as frames are not seen while no viewer is connected.
+     */
+    void reset() {
+        lastFrameNanos = 0;
+        framesSinceSent = 0;
+        postTriggerRemaining = 0;
+    }
+
+    Decision decide() {
+        val now = System.nanoTime();
+        val frameTime = lastFrameNanos == 0 ? 0 : now - lastFrameNanos;
+        lastFrameNanos = now;
+
+        if (frameTime > frameTimeThresholdNanos || newServerTickTime() > tickTimeThresholdNanos) {
+            postTriggerRemaining = postTriggerFrames;
+            framesSinceSent = 0;
+            return Decision.HISTORY;
+        }
+        if (postTriggerRemaining > 0) {
+            postTriggerRemaining--;
+            framesSinceSent = 0;
+            return Decision.LATEST;
+        }
+        if (interval > 0 && ++framesSinceSent >= interval) {
+            framesSinceSent = 0;
+            return Decision.LATEST;
+        }
+        return Decision.SKIP;
+    }
+
+    /**
+     * @return The duration of the integrated server's latest completed tick, or 0 if it was already seen or there is no
+     * server.
+     */
+    private long newServerTickTime() {
+        val server = MinecraftServer.getServer();
+        if (server == null) {
+            return 0;
+        }
+        // The counter is advanced when a tick starts, but its time is only stored once it ends
+        val completed = server.getTickCounter() - 1;
+        if (completed < 0 || completed == lastServerTick) {
+            return 0;
+        }
+        lastServerTick = completed;
+        return server.tickTimeArray[completed % server.tickTimeArray.length];
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * This file is part of MEGATrace.
+ *
+ * Copyright (C) 2024-2025 The MEGA Team
+ * All Rights Reserved
+ *
+ * The above copyright notice, this permission notice and the word "MEGA"
+ * shall be included in all copies or substantial portions of the Software.
+ *
+ * MEGATrace is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, only version 3 of the License.
+ *
+ * MEGATrace is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with MEGATrace.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package mega.trace.client;
+
+import lombok.val;
+import mega.trace.Share;
+import mega.trace.common.OffHeapTracker;
+import org.lwjgl.system.Configuration;
+import org.lwjgl.system.MemoryAccessJNI;
+import org.lwjgl.system.MemoryUtil;
+
+import static org.lwjgl.system.libc.LibCStdlib.naligned_alloc;
+import static org.lwjgl.system.libc.LibCStdlib.naligned_free;
+import static org.lwjgl.system.libc.LibCStdlib.ncalloc;
+import static org.lwjgl.system.libc.LibCStdlib.nfree;
+import static org.lwjgl.system.libc.LibCStdlib.nmalloc;
+import static org.lwjgl.system.libc.LibCStdlib.nrealloc;
+
+/**
+ * LWJGL allocator backed by the C standard library, reporting everything that goes through {@link MemoryUtil}'s
+ * allocation methods to the {@link OffHeapTracker}.
+ * <p>
+ * Native libraries handed the raw function pointers bypass it, as do allocations made before it was installed.
+ */
+public final class TrackingAllocator implements MemoryUtil.MemoryAllocator {
+    private TrackingAllocator() {
+    }
+
+    /**
+     * Must run before LWJGL allocates anything, as it picks its allocator on first use.
+     */
+    public static void install() {
+        val allocator = new TrackingAllocator();
+        Configuration.MEMORY_ALLOCATOR.set(allocator);
+        if (MemoryUtil.getAllocator(false) != allocator) {
+            Share.log.warn("LWJGL picked its allocator before off-heap tracking was installed, " +
+                           "MemoryUtil allocations won't be tracked");
+        }
+    }
+
+    @Override
+    public long getMalloc() {
+        return MemoryAccessJNI.malloc;
+    }
+
+    @Override
+    public long getCalloc() {
+        return MemoryAccessJNI.calloc;
+    }
+
+    @Override
+    public long getRealloc() {
+        return MemoryAccessJNI.realloc;
+    }
+
+    @Override
+    public long getFree() {
+        return MemoryAccessJNI.free;
+    }
+
+    @Override
+    public long getAlignedAlloc() {
+        return MemoryAccessJNI.aligned_alloc;
+    }
+
+    @Override
+    public long getAlignedFree() {
+        return MemoryAccessJNI.aligned_free;
+    }
+
+    @Override
+    public long malloc(long size) {
+        val address = nmalloc(size);
+        OffHeapTracker.allocated(address, size);
+        return address;
+    }
+
+    @Override
+    public long calloc(long num, long size) {
+        val address = ncalloc(num, size);
+        OffHeapTracker.allocated(address, num * size);
+        return address;
+    }
+
+    @Override
+    public long realloc(long ptr, long size) {
+        // Reported as freed first, as once realloc returns another thread may already be handed the same address
+        val oldSize = OffHeapTracker.freed(ptr);
+        val address = nrealloc(ptr, size);
+        if (address != 0) {
+            OffHeapTracker.allocated(address, size);
+        } else if (size != 0 && oldSize >= 0) {
+            // Failed, the old block is still allocated
+            OffHeapTracker.allocated(ptr, oldSize);
+        }
+        return address;
+    }
+
+    @Override
+    public void free(long ptr) {
+        OffHeapTracker.freed(ptr);
+        nfree(ptr);
+    }
+
+    @Override
+    public long aligned_alloc(long alignment, long size) {
+        val address = naligned_alloc(alignment, size);
+        OffHeapTracker.allocated(address, size);
+        return address;
+    }
+
+    @Override
+    public void aligned_free(long ptr) {
+        OffHeapTracker.freed(ptr);
+        naligned_free(ptr);
+    }
+}
@@ -25,17 +25,23 @@ package mega.trace.common;
 import it.unimi.dsi.fastutil.longs.AbstractLongList;
 import it.unimi.dsi.fastutil.longs.LongArrayList;
 import lombok.AccessLevel;
-import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.experimental.Accessors;
+import lombok.val;
 import mega.trace.MEGATrace;
 import mega.trace.common.colors.Palette;
-import mega.trace.common.colors.Rgb;
 import mega.trace.natives.Tracy;
 import org.jetbrains.annotations.NotNull;
 
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Forwards the sections of one {@link net.minecraft.profiler.Profiler} to Tracy.
+ * <p>
+ * Mods call profilers from worker threads too, so each thread gets its own zone stack and is named in Tracy the first
+ * time it opens a zone. The first thread to use the profiler owns it, and finds its stack without a thread local lookup.
+ */
 @Getter
-@AllArgsConstructor
 @Accessors(fluent = true,
            chain = false)
 public final class CPUProfiler implements TracyProfiler {
@@ -44,21 +50,62 @@ public final class CPUProfiler implements TracyProfiler {
         MEGATrace.initNatives();
     }
 
-    @Getter(AccessLevel.NONE)
-    private final AbstractLongList zones = new LongArrayList();
-
     private final String prefix;
     private final Palette color;
 
+    @Getter(AccessLevel.NONE)
+    private final OwnedThreadLocal<ThreadState> threadStates = new OwnedThreadLocal<>(ThreadState::new);
+
+    public CPUProfiler(String prefix, Palette color) {
+        this.prefix = prefix;
+        this.color = color;
+    }
+
+    /**
+     * @return The calling thread's zone registry.
+     */
+    public ZoneRegistry zoneRegistry() {
+        return threadState().zoneRegistry;
+    }
+
+    @Override
+    public void beginZone(@NotNull String name) {
+        val state = threadState();
+        val zones = state.zones;
+        val zoneRegistry = state.zoneRegistry;
+        val depth = zones.size();
+        val id = zoneRegistry.zoneId(name, depth);
+        if (id == ZoneRegistry.INVALID_ID) {
+            zones.push(Tracy.beginZone(zoneRegistry.encodedName(name), zoneRegistry.color(depth)));
+        } else {
+            zones.push(Tracy.beginZoneById(id));
+        }
+    }
+
     @Override
     public void beginZone(byte @NotNull [] name) {
-        zones.push(Tracy.beginZone(name, Rgb.fromPalette(color, zones.size()).toArgbInt()));
+        val zones = threadState().zones;
+        zones.push(Tracy.beginZone(name, color.argb(zones.size())));
     }
 
     @Override
     public void endZone() {
+        val zones = threadState().zones;
         if (!zones.isEmpty()) {
             Tracy.endZone(zones.popLong());
         }
     }
+
+    private ThreadState threadState() {
+        return threadStates.get();
+    }
+
+    private final class ThreadState {
+        final AbstractLongList zones = new LongArrayList();
+        final ZoneRegistry zoneRegistry = new ZoneRegistry(prefix, color);
+
+        ThreadState() {
+            Tracy.setThreadName(Thread.currentThread().getName().getBytes(StandardCharsets.UTF_8));
+        }
+    }
 }
@@ -0,0 +1,123 @@
+/*
+ * This file is part of MEGATrace.
+ *
+ * Copyright (C) 2024-2025 The MEGA Team
+ * All Rights Reserved
+ *
+ * The above copyright notice, this permission notice and the word "MEGA"
+ * shall be included in all copies or substantial portions of the Software.
+ *
+ * MEGATrace is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, only version 3 of the License.
+ *
+ * MEGATrace is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with MEGATrace.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package mega.trace.common;
+
+import lombok.val;
+import mega.trace.MEGATrace;
+import mega.trace.natives.Tracy;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Zones and plots for the chunk pipeline. Loading, generating, populating and serializing chunks happen on the
+ * server thread, compressing and writing them to region files on the file IO thread, which is named in Tracy the
+ * first time it runs.
+ */
+public final class ChunkIO {
+    private static final int ZONE_COLOR = 0xA07040;
+    private static final long RATE_WINDOW_NANOS = 1_000_000_000L;
+
+    public enum Phase {
+        LOAD("sv_chunkLoad"),
+        GENERATE("sv_chunkGenerate"),
+        POPULATE("sv_chunkPopulate"),
+        SAVE("sv_chunkSave"),
+        WRITE("io_chunkWrite"),
+        ;
+
+        final String name;
+
+        Phase(String name) {
+            this.name = name;
+        }
+    }
+
+    private static final int[] zoneIds = new int[Phase.values().length];
+    private static final AtomicLong bytesWritten = new AtomicLong();
+
+    private static final Plot saveQueuePlot;
+    private static final Plot bytesWrittenPlot;
+
+    // Only touched from the file IO thread
+    private static boolean ioThreadNamed;
+    private static long windowStart;
+    private static long windowBytes;
+
+    static {
+        MEGATrace.initNatives();
+        for (val phase : Phase.values()) {
+            zoneIds[phase.ordinal()] = Tracy.registerZone(phase.name.getBytes(StandardCharsets.UTF_8), ZONE_COLOR);
+        }
+        saveQueuePlot = new Plot("io_saveQueue", Plot.Format.NUMBER, true, true, 0);
+        bytesWrittenPlot = new Plot("io_chunkBytesPerSecond", Plot.Format.MEMORY, false, true, 0);
+    }
+
+    private ChunkIO() {
+    }
+
+    /**
+     * @return The zone to pass to {@link TraceZones#endZone(long)}.
+     */
+    public static long begin(Phase phase) {
+        return TraceZones.beginZone(zoneIds[phase.ordinal()]);
+    }
+
+    /**
+     * Called with the compressed size of every chunk written to a region file, from whichever thread wrote it.
+     */
+    public static void written(int bytes) {
+        bytesWritten.addAndGet(bytes);
+    }
+
+    /**
+     * Names the file IO thread, called from it each time it goes over its queue.
+     */
+    public static void ioThreadStarted() {
+        if (!ioThreadNamed) {
+            Tracy.setThreadName(Thread.currentThread().getName().getBytes(StandardCharsets.UTF_8));
+            ioThreadNamed = true;
+        }
+    }
+
+    /**
+     * Plots the save queue, and the write rate once per second, called from the file IO thread after it went over its
+     * queue.
+     *
+     * @param queuedChunks Chunks waiting to be written, over all dimensions.
+     */
+    public static void sample(int queuedChunks) {
+        val now = System.nanoTime();
+        windowBytes += bytesWritten.getAndSet(0);
+        if (windowStart == 0) {
+            windowStart = now;
+        }
+        val elapsed = now - windowStart;
+        if (elapsed >= RATE_WINDOW_NANOS) {
+            bytesWrittenPlot.plot(windowBytes * 1_000_000_000.0 / elapsed);
+            windowStart = now;
+            windowBytes = 0;
+        }
+        saveQueuePlot.plot(queuedChunks);
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * This file is part of MEGATrace.
+ *
+ * Copyright (C) 2024-2025 The MEGA Team
+ * All Rights Reserved
+ *
+ * The above copyright notice, this permission notice and the word "MEGA"
+ * shall be included in all copies or substantial portions of the Software.
+ *
+ * MEGATrace is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, only version 3 of the License.
+ *
+ * MEGATrace is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with MEGATrace.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package mega.trace.common;
+
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Object2ObjectOpenHashMap;
+import lombok.val;
+import mega.trace.Share;
+import mega.trace.natives.Tracy;
+
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.TabularData;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reports garbage collections as zones on a "GC" track, from the notifications sent by each
+ * {@link java.lang.management.GarbageCollectorMXBean} once a collection is over.
+ * <p>
+ * Tracy can only place zones in the past on GPU contexts, so the track is a GPU context driven by the JVM uptime
+ * clock the notifications are timed with. The collector name and cause make up the zone name, and the reclaimed bytes
+ * are plotted when each notification arrives.
+ */
+public final class GCTracker implements NotificationListener {
+    // GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION, without depending on com.sun.management
+    private static final String NOTIFICATION_TYPE = "com.sun.management.gc.notification";
+    private static final int ZONE_COLOR = 0xC04040;
+    private static final int UNREGISTERED = Integer.MIN_VALUE;
+
+    private static final AtomicLong reclaimedBytes = new AtomicLong();
+
+    // Collector name, then cause, to zone id. Both come from small fixed sets, so lookups build no name
+    private final Object2ObjectOpenHashMap<String, Object2IntOpenHashMap<String>> zoneIds =
+            new Object2ObjectOpenHashMap<>();
+    private final Plot reclaimedPlot = new Plot("jvm_gcReclaimed", Plot.Format.MEMORY, true, false, 0);
+    // System.nanoTime() at JVM start, as GC times are given in milliseconds since then
+    private final long uptimeOriginNanos;
+
+    private GCTracker() {
+        val uptimeMs = ManagementFactory.getRuntimeMXBean().getUptime();
+        uptimeOriginNanos = System.nanoTime() - uptimeMs * 1_000_000L;
+    }
+
+    /**
+     * @return Bytes reclaimed by all collections since startup.
+     */
+    public static long reclaimedBytes() {
+        return reclaimedBytes.get();
+    }
+
+    public static void install() {
+        val tracker = new GCTracker();
+        Tracy.gcInit(System.nanoTime() - tracker.uptimeOriginNanos);
+        for (val bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+            if (bean instanceof NotificationEmitter) {
+                ((NotificationEmitter) bean).addNotificationListener(tracker, null, null);
+            } else {
+                Share.log.warn("Garbage collector {} does not send notifications, its pauses won't be traced",
+                               bean.getName());
+            }
+        }
+    }
+
+    @Override
+    public synchronized void handleNotification(Notification notification, Object handback) {
+        if (!NOTIFICATION_TYPE.equals(notification.getType())) {
+            return;
+        }
+        val data = (CompositeData) notification.getUserData();
+        val gcName = (String) data.get("gcName");
+        val gcCause = (String) data.get("gcCause");
+        val gcInfo = (CompositeData) data.get("gcInfo");
+        val startMs = (long) (Long) gcInfo.get("startTime");
+        val endMs = (long) (Long) gcInfo.get("endTime");
+
+        val reclaimed = usedBytes((TabularData) gcInfo.get("memoryUsageBeforeGc")) -
+                        usedBytes((TabularData) gcInfo.get("memoryUsageAfterGc"));
+        if (reclaimed > 0) {
+            reclaimedBytes.addAndGet(reclaimed);
+        }
+
+        if (!ViewerConnection.connected()) {
+            return;
+        }
+        val zoneId = zoneId(gcName, gcCause);
+        if (zoneId >= 0) {
+            Tracy.gcPause(zoneId, startMs * 1_000_000L, endMs * 1_000_000L);
+        }
+        reclaimedPlot.plot(Math.max(reclaimed, 0));
+    }
+
+    /**
+     * @return The zone id, negative if the native registry was full, which is kept so it is not retried.
+     */
+    private int zoneId(String gcName, String gcCause) {
+        var causes = zoneIds.get(gcName);
+        if (causes == null) {
+            causes = new Object2IntOpenHashMap<>();
+            causes.defaultReturnValue(UNREGISTERED);
+            zoneIds.put(gcName, causes);
+        }
+        var id = causes.getInt(gcCause);
+        if (id == UNREGISTERED) {
+            id = Tracy.registerZone((gcName + ": " + gcCause).getBytes(StandardCharsets.UTF_8), ZONE_COLOR);
+            causes.put(gcCause, id);
+        }
+        return id;
+    }
+
+    /**
+     * Sums the used bytes over all memory pools in a {@code memoryUsageBeforeGc} or {@code memoryUsageAfterGc} table.
+     */
+    private static long usedBytes(TabularData pools) {
+        var used = 0L;
+        for (val row : pools.values()) {
+            val usage = (CompositeData) ((CompositeData) row).get("value");
+            used += (Long) usage.get("used");
+        }
+        return used;
+    }
+}
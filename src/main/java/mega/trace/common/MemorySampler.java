@@ -0,0 +1,126 @@
+/*
+ * This file is part of MEGATrace.
+ *
+ * Copyright (C) 2024-2025 The MEGA Team
+ * All Rights Reserved
+ *
+ * The above copyright notice, this permission notice and the word "MEGA"
+ * shall be included in all copies or substantial portions of the Software.
+ *
+ * MEGATrace is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, only version 3 of the License.
+ *
+ * MEGATrace is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with MEGATrace.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package mega.trace.common;
+
+import lombok.val;
+import mega.trace.Config;
+import mega.trace.natives.Tracy;
+import org.jetbrains.annotations.Nullable;
+
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+
+/**
+ * Plots heap usage, allocation rate, direct memory, the size of the native message pool and how well
+ * {@link ZoneRegistry} caches hit on a fixed interval, and with {@link Config#OFFHEAP_TRACKING} the live bytes seen by
+ * the {@link OffHeapTracker}.
+ * <p>
+ * Only reads counters, so sampling itself doesn't allocate. The allocation rate is the growth of the heap between two
+ * samples, plus what {@link GCTracker} saw being reclaimed in between.
+ */
+public final class MemorySampler {
+    private final Runtime runtime = Runtime.getRuntime();
+    @Nullable
+    private final BufferPoolMXBean directPool = directPool();
+
+    private final Plot heapUsedPlot = new Plot("jvm_heapUsed", Plot.Format.MEMORY, false, true, 0);
+    private final Plot allocationRatePlot = new Plot("jvm_allocationRate", Plot.Format.MEMORY, false, false, 0);
+    private final Plot directMemoryPlot = new Plot("jvm_directMemory", Plot.Format.MEMORY, false, true, 0);
+    private final Plot messagePoolPlot = new Plot("tracy_messagePool", Plot.Format.NUMBER, true, false, 0);
+    private final Plot zoneCacheHitRatePlot = new Plot("tracy_zoneCacheHitRate", Plot.Format.PERCENTAGE, false, false, 0);
+    private final Plot zoneCacheEvictionsPlot = new Plot("tracy_zoneCacheEvictions", Plot.Format.NUMBER, true, false, 0);
+    private final long[] zoneCacheCounts = new long[3];
+    @Nullable
+    private final Plot offHeapPlot = Config.OFFHEAP_TRACKING ?
+                                     new Plot("jvm_offHeapLive", Plot.Format.MEMORY, false, true, 0) : null;
+
+    private long lastNanos = System.nanoTime();
+    private long lastUsed = usedHeap();
+    private long lastReclaimed = GCTracker.reclaimedBytes();
+
+    /**
+     * Samples until the calling thread is interrupted.
+     */
+    public static void run() {
+        val sampler = new MemorySampler();
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                Thread.sleep(Config.MEMORY_SAMPLE_INTERVAL_MS);
+                sampler.sample();
+            }
+        } catch (InterruptedException ignored) {
+        }
+    }
+
+    private void sample() {
+        if (offHeapPlot != null) {
+            OffHeapTracker.pollFreed();
+            OffHeapTracker.flush();
+        }
+        val now = System.nanoTime();
+        val used = usedHeap();
+        val reclaimed = GCTracker.reclaimedBytes();
+        // GC notifications arrive late, so a collection can show up a sample after the heap shrank
+        val allocated = Math.max(0, used - lastUsed + reclaimed - lastReclaimed);
+        val seconds = (now - lastNanos) / 1_000_000_000.0;
+        lastNanos = now;
+        lastUsed = used;
+        lastReclaimed = reclaimed;
+
+        Arrays.fill(zoneCacheCounts, 0);
+        ZoneRegistry.sampleAll(zoneCacheCounts);
+
+        if (!ViewerConnection.connected()) {
+            return;
+        }
+        heapUsedPlot.plot(used);
+        allocationRatePlot.plot(allocated / seconds);
+        if (directPool != null) {
+            directMemoryPlot.plot(directPool.getMemoryUsed());
+        }
+        if (offHeapPlot != null) {
+            offHeapPlot.plot(OffHeapTracker.liveBytes());
+        }
+        messagePoolPlot.plot(Tracy.messagePoolSize());
+        val lookups = zoneCacheCounts[0] + zoneCacheCounts[1];
+        if (lookups > 0) {
+            zoneCacheHitRatePlot.plot(zoneCacheCounts[0] * 100.0 / lookups);
+        }
+        zoneCacheEvictionsPlot.plot(zoneCacheCounts[2]);
+    }
+
+    private long usedHeap() {
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    @Nullable
+    private static BufferPoolMXBean directPool() {
+        for (val pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+            if ("direct".equals(pool.getName())) {
+                return pool;
+            }
+        }
+        return null;
+    }
+}
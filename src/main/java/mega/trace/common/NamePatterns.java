@@ -0,0 +1,89 @@
+/*
+ * This file is part of MEGATrace.
+ *
+ * Copyright (C) 2024-2025 The MEGA Team
+ * All Rights Reserved
+ *
+ * The above copyright notice, this permission notice and the word "MEGA"
+ * shall be included in all copies or substantial portions of the Software.
+ *
+ * MEGATrace is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, only version 3 of the License.
+ *
+ * MEGATrace is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with MEGATrace.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package mega.trace.common;
+
+import it.unimi.dsi.fastutil.objects.ObjectOpenHashSet;
+import lombok.val;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * A set of names with {@code *} wildcards. Exact names are kept in a hash set, all wildcard names are compiled into a
+ * single regex.
+ */
+public final class NamePatterns {
+    private final Set<String> exact;
+    @Nullable
+    private final Pattern wildcards;
+
+    private NamePatterns(Set<String> exact, @Nullable Pattern wildcards) {
+        this.exact = exact;
+        this.wildcards = wildcards;
+    }
+
+    /**
+     * @param list Comma separated names.
+     * @return The patterns, or null if the list is empty.
+     */
+    @Nullable
+    public static NamePatterns parse(@NotNull String list) {
+        val exact = new ObjectOpenHashSet<String>();
+        val regex = new StringBuilder();
+        for (val entry : list.split(",")) {
+            val name = entry.trim();
+            if (name.isEmpty()) {
+                continue;
+            }
+            if (name.indexOf('*') < 0) {
+                exact.add(name);
+                continue;
+            }
+            if (regex.length() > 0) {
+                regex.append('|');
+            }
+            regex.append(globToRegex(name));
+        }
+        if (exact.isEmpty() && regex.length() == 0) {
+            return null;
+        }
+        return new NamePatterns(exact, regex.length() == 0 ? null : Pattern.compile(regex.toString()));
+    }
+
+    public static String globToRegex(@NotNull String glob) {
+        val regex = new StringBuilder();
+        for (val part : glob.split("\\*", -1)) {
+            if (regex.length() > 0) {
+                regex.append(".*");
+            }
+            regex.append(Pattern.quote(part));
+        }
+        return regex.toString();
+    }
+
+    public boolean matches(@NotNull String name) {
+        return exact.contains(name) || (wildcards != null && wildcards.matcher(name).matches());
+    }
+}
@@ -0,0 +1,278 @@
+/*
+ * This file is part of MEGATrace.
+ *
+ * Copyright (C) 2024-2025 The MEGA Team
+ * All Rights Reserved
+ *
+ * The above copyright notice, this permission notice and the word "MEGA"
+ * shall be included in all copies or substantial portions of the Software.
+ *
+ * MEGATrace is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, only version 3 of the License.
+ *
+ * MEGATrace is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with MEGATrace.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package mega.trace.common;
+
+import it.unimi.dsi.fastutil.HashCommon;
+import it.unimi.dsi.fastutil.longs.Long2LongOpenHashMap;
+import lombok.val;
+import mega.trace.Config;
+import mega.trace.natives.Tracy;
+
+import java.lang.ref.PhantomReference;
+import java.lang.ref.ReferenceQueue;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Streams off-heap allocations into Tracy memory pools, with {@link Config#OFFHEAP_TRACKING}.
+ * <p>
+ * The "offheap" pool gets allocations from the LWJGL allocator installed by {@code TrackingAllocator}. The
+ * "offheap_direct" pool gets buffers from {@link ByteBuffer#allocateDirect(int)} call sites rewritten by
+ * {@code DirectBufferTransformer}. Direct buffers are freed by the garbage collector, so their frees are picked up from
+ * a reference queue in {@link #pollFreed()}. Their addresses aren't accessible without LWJGL, so they are numbered
+ * instead, in a pool of their own.
+ * <p>
+ * Sizes are kept in lock striped maps, and events are sent to Tracy in batches per stripe, flushed when full or by
+ * {@link #flush()}. On average every {@link Config#OFFHEAP_SAMPLE_INTERVAL}th allocation captures a stack trace, and
+ * sends its callsite as a message.
+ * <p>
+ * Allocations made before the transformer or allocator are installed are not seen, and neither are direct buffers
+ * allocated from packages the launch class loader doesn't transform, such as LWJGL's {@code BufferUtils}.
+ */
+public final class OffHeapTracker {
+    private static final int MESSAGE_COLOR = 0x40A0E0;
+    private static final String POOL_NAME = "offheap";
+    private static final String DIRECT_POOL_NAME = "offheap_direct";
+
+    // Power of two, addresses are spread over stripes so threads rarely wait on each other
+    private static final int STRIPE_COUNT = 64;
+    private static final int BATCH_SIZE = 256;
+    private static final long FREE = -1;
+    // Sizes are stored as is once sent to Tracy, or complemented if they were allocated before the natives loaded.
+    // Either way 0 byte allocations stay distinct from missing entries
+    private static final long UNTRACKED = Long.MIN_VALUE;
+
+    private static final Stripe[] stripes = new Stripe[STRIPE_COUNT];
+    private static final LongAdder liveBytes = new LongAdder();
+    private static final AtomicLong directBufferCount = new AtomicLong();
+
+    private static final ReferenceQueue<ByteBuffer> freedBuffers = new ReferenceQueue<>();
+    // Keeps the references themselves reachable until their buffer is collected
+    private static final Set<DirectBufferRef> liveBuffers = Collections.newSetFromMap(new ConcurrentHashMap<>());
+
+    private static volatile int pool = -1;
+    private static volatile int directPool = -1;
+
+    static {
+        for (var i = 0; i < STRIPE_COUNT; i++) {
+            stripes[i] = new Stripe();
+        }
+    }
+
+    private OffHeapTracker() {
+    }
+
+    /**
+     * Starts sending allocations to Tracy, called once the natives are loaded.
+     */
+    public static void ready() {
+        if (Config.OFFHEAP_TRACKING) {
+            pool = Tracy.registerMemoryPool(POOL_NAME.getBytes(StandardCharsets.UTF_8));
+            directPool = Tracy.registerMemoryPool(DIRECT_POOL_NAME.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    public static long liveBytes() {
+        return liveBytes.sum();
+    }
+
+    public static void allocated(long address, long size) {
+        if (address == 0) {
+            return;
+        }
+        val pool = OffHeapTracker.pool;
+        val stripe = stripe(address);
+        final long previous;
+        synchronized (stripe) {
+            previous = stripe.sizes.put(address, pool < 0 ? ~size : size);
+            if (pool >= 0) {
+                // Freed without the tracker seeing it, Tracy still has to see a free before the address is reused
+                if (previous >= 0) {
+                    stripe.queue(pool, address, FREE);
+                }
+                stripe.queue(pool, address, size);
+            }
+        }
+        if (previous != UNTRACKED) {
+            liveBytes.add(-sizeOf(previous));
+        }
+        liveBytes.add(size);
+        if (pool >= 0) {
+            sample(size);
+        }
+    }
+
+    /**
+     * Must be called before the memory is released, so the free reaches Tracy before anyone can be handed the address
+     * again.
+     *
+     * @return The size the allocation was tracked with, or -1 if it wasn't tracked.
+     */
+    public static long freed(long address) {
+        if (address == 0) {
+            return -1;
+        }
+        val pool = OffHeapTracker.pool;
+        val stripe = stripe(address);
+        final long entry;
+        synchronized (stripe) {
+            entry = stripe.sizes.remove(address);
+            if (entry >= 0 && pool >= 0) {
+                stripe.queue(pool, address, FREE);
+            }
+        }
+        if (entry == UNTRACKED) {
+            return -1;
+        }
+        val size = sizeOf(entry);
+        liveBytes.add(-size);
+        return size;
+    }
+
+    private static long sizeOf(long entry) {
+        return entry < 0 ? ~entry : entry;
+    }
+
+    /**
+     * Replaces calls to {@link ByteBuffer#allocateDirect(int)}.
+     */
+    public static ByteBuffer allocateDirect(int capacity) {
+        val buffer = ByteBuffer.allocateDirect(capacity);
+        val pool = directPool;
+        val id = directBufferCount.incrementAndGet();
+        liveBuffers.add(new DirectBufferRef(buffer, id, capacity, pool >= 0));
+        liveBytes.add(capacity);
+        if (pool >= 0) {
+            val stripe = stripe(id);
+            synchronized (stripe) {
+                stripe.queue(pool, id, capacity);
+            }
+            sample(capacity);
+        }
+        return buffer;
+    }
+
+    /**
+     * Reports direct buffers collected since the last call.
+     */
+    public static void pollFreed() {
+        DirectBufferRef ref;
+        while ((ref = (DirectBufferRef) freedBuffers.poll()) != null) {
+            liveBuffers.remove(ref);
+            liveBytes.add(-ref.size);
+            if (ref.reported) {
+                val stripe = stripe(ref.id);
+                synchronized (stripe) {
+                    stripe.queue(directPool, ref.id, FREE);
+                }
+            }
+        }
+    }
+
+    /**
+     * Sends the allocations and frees still waiting in a batch, meant to be called periodically.
+     */
+    public static void flush() {
+        for (val stripe : stripes) {
+            synchronized (stripe) {
+                stripe.flush();
+            }
+        }
+    }
+
+    private static Stripe stripe(long address) {
+        return stripes[(int) HashCommon.mix(address) & (STRIPE_COUNT - 1)];
+    }
+
+    private static void sample(long size) {
+        // Random rather than counted, so allocating threads don't share a counter
+        if (ThreadLocalRandom.current().nextInt(Config.OFFHEAP_SAMPLE_INTERVAL) == 0) {
+            sampleCallsite(size);
+        }
+    }
+
+    private static void sampleCallsite(long size) {
+        val stack = new Throwable().getStackTrace();
+        for (val frame : stack) {
+            val className = frame.getClassName();
+            if (className.startsWith("mega.trace.") || className.startsWith("org.lwjgl.system.") ||
+                className.startsWith("java.nio.")) {
+                continue;
+            }
+            val message = POOL_NAME + ": " + size + " B at " + frame;
+            Tracy.messageColor(message.getBytes(StandardCharsets.UTF_8), MESSAGE_COLOR);
+            return;
+        }
+    }
+
+    /**
+     * Sizes and queued events of the addresses hashing to it. An address always lands in the same stripe, so its
+     * allocation and free reach Tracy in order. Guarded by its own monitor.
+     */
+    private static final class Stripe {
+        final Long2LongOpenHashMap sizes = new Long2LongOpenHashMap();
+        final long[] events = new long[BATCH_SIZE * 3];
+        int eventCount;
+
+        Stripe() {
+            sizes.defaultReturnValue(UNTRACKED);
+        }
+
+        void queue(int pool, long address, long size) {
+            if (eventCount == BATCH_SIZE) {
+                flush();
+            }
+            val i = eventCount * 3;
+            events[i] = pool;
+            events[i + 1] = address;
+            events[i + 2] = size;
+            eventCount++;
+        }
+
+        void flush() {
+            if (eventCount > 0) {
+                Tracy.memBatch(events, eventCount);
+                eventCount = 0;
+            }
+        }
+    }
+
+    private static final class DirectBufferRef extends PhantomReference<ByteBuffer> {
+        final long id;
+        final int size;
+        final boolean reported;
+
+        DirectBufferRef(ByteBuffer buffer, long id, int size, boolean reported) {
+            super(buffer, freedBuffers);
+            this.id = id;
+            this.size = size;
+            this.reported = reported;
+        }
+    }
+}
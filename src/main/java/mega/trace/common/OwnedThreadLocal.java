@@ -0,0 +1,66 @@
+/*
+ * This file is part of MEGATrace.
+ *
+ * Copyright (C) 2024-2025 The MEGA Team
+ * All Rights Reserved
+ *
+ * The above copyright notice, this permission notice and the word "MEGA"
+ * shall be included in all copies or substantial portions of the Software.
+ *
+ * MEGATrace is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, only version 3 of the License.
+ *
+ * MEGATrace is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with MEGATrace.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package mega.trace.common;
+
+import lombok.val;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.function.Supplier;
+
+/**
+ * Per thread state for things that are nearly always used from a single thread, but have to stay correct when they
+ * aren't. The first thread to ask owns its value, and finds it again without a thread local lookup.
+ */
+public final class OwnedThreadLocal<T> {
+    private final ThreadLocal<Owned<T>> values;
+    private volatile Owned<T> owner;
+
+    public OwnedThreadLocal(@NotNull Supplier<T> initial) {
+        this.values = ThreadLocal.withInitial(() -> new Owned<>(initial.get()));
+    }
+
+    public T get() {
+        val owner = this.owner;
+        if (owner != null && owner.thread == Thread.currentThread()) {
+            return owner.value;
+        }
+        val owned = values.get();
+        if (owner == null) {
+            synchronized (this) {
+                if (this.owner == null) {
+                    this.owner = owned;
+                }
+            }
+        }
+        return owned.value;
+    }
+
+    private static final class Owned<T> {
+        final Thread thread = Thread.currentThread();
+        final T value;
+
+        Owned(T value) {
+            this.value = value;
+        }
+    }
+}
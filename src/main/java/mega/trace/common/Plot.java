@@ -0,0 +1,82 @@
+/*
+ * This file is part of MEGATrace.
+ *
+ * Copyright (C) 2024-2025 The MEGA Team
+ * All Rights Reserved
+ *
+ * The above copyright notice, this permission notice and the word "MEGA"
+ * shall be included in all copies or substantial portions of the Software.
+ *
+ * MEGATrace is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, only version 3 of the License.
+ *
+ * MEGATrace is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with MEGATrace.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package mega.trace.common;
+
+import mega.trace.natives.Tracy;
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A Tracy plot, registered once so plotting a value passes only an id to native code.
+ */
+public final class Plot {
+    public static final int INVALID_ID = -1;
+
+    private final int id;
+
+    public Plot(@NotNull String name) {
+        this.id = Tracy.registerPlot(name.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @param step  Draw the plot as steps instead of interpolating between values, for counts.
+     * @param fill  Fill the area under the plot.
+     * @param color Line color as {@code 0xRRGGBB}, 0 uses Tracy's default.
+     */
+    public Plot(@NotNull String name, @NotNull Format format, boolean step, boolean fill, int color) {
+        this(name);
+        if (id != INVALID_ID) {
+            Tracy.plotConfig(id, format.ordinal(), step, fill, color);
+        }
+    }
+
+    public void plot(double value) {
+        plot(id, value);
+    }
+
+    /**
+     * @return False if the native plot registry was full and this plot is never sent.
+     */
+    public boolean valid() {
+        return id != INVALID_ID;
+    }
+
+    /**
+     * Plots by a raw id from {@link Tracy#registerPlot(byte[])}, for handles held outside of this class.
+     */
+    public static void plot(int id, double value) {
+        if (id != INVALID_ID && ViewerConnection.connected()) {
+            Tracy.plot(id, value);
+        }
+    }
+
+    /**
+     * How values are displayed, in the order the native side expects.
+     */
+    public enum Format {
+        NUMBER,
+        MEMORY,
+        PERCENTAGE,
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * This file is part of MEGATrace.
+ *
+ * Copyright (C) 2024-2025 The MEGA Team
+ * All Rights Reserved
+ *
+ * The above copyright notice, this permission notice and the word "MEGA"
+ * shall be included in all copies or substantial portions of the Software.
+ *
+ * MEGATrace is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, only version 3 of the License.
+ *
+ * MEGATrace is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with MEGATrace.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package mega.trace.common;
+
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import lombok.val;
+import mega.trace.mixin.mixins.common.WorldServerAccessor;
+
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.world.WorldServer;
+
+/**
+ * Plots server health once per tick. Plots are created the first time a dimension is seen, after that sampling
+ * doesn't allocate.
+ */
+public final class ServerSampler {
+    private final Plot msptPlot = new Plot("sv_mspt");
+    private final Plot tpsPlot = new Plot("sv_tps");
+    private final Int2ObjectOpenHashMap<DimensionPlots> dimensions = new Int2ObjectOpenHashMap<>();
+
+    /**
+     * @param tickCounter The tick that just finished, its duration is already in {@link MinecraftServer#tickTimeArray}.
+     */
+    public void sample(MinecraftServer server, int tickCounter) {
+        if (!ViewerConnection.connected()) {
+            return;
+        }
+        val tickTimes = server.tickTimeArray;
+        msptPlot.plot(tickTimes[tickCounter % tickTimes.length] / 1_000_000.0);
+
+        var total = 0L;
+        for (val tickTime : tickTimes) {
+            total += tickTime;
+        }
+        val meanMs = total / (double) tickTimes.length / 1_000_000.0;
+        tpsPlot.plot(meanMs > 0 ? Math.min(20.0, 1000.0 / meanMs) : 20.0);
+
+        for (val world : server.worldServers) {
+            if (world != null) {
+                dimension(world.provider.dimensionId).sample(world);
+            }
+        }
+    }
+
+    private DimensionPlots dimension(int dimensionId) {
+        var plots = dimensions.get(dimensionId);
+        if (plots == null) {
+            plots = new DimensionPlots("sv_dim" + dimensionId + "_");
+            dimensions.put(dimensionId, plots);
+        }
+        return plots;
+    }
+
+    private static final class DimensionPlots {
+        final Plot chunks;
+        final Plot entities;
+        final Plot tileEntities;
+        final Plot pendingTicks;
+
+        DimensionPlots(String prefix) {
+            chunks = new Plot(prefix + "chunks", Plot.Format.NUMBER, true, true, 0);
+            entities = new Plot(prefix + "entities", Plot.Format.NUMBER, true, true, 0);
+            tileEntities = new Plot(prefix + "tileEntities", Plot.Format.NUMBER, true, true, 0);
+            pendingTicks = new Plot(prefix + "pendingTicks", Plot.Format.NUMBER, true, true, 0);
+        }
+
+        void sample(WorldServer world) {
+            chunks.plot(world.theChunkProviderServer.getLoadedChunkCount());
+            entities.plot(world.loadedEntityList.size());
+            tileEntities.plot(world.loadedTileEntityList.size());
+            pendingTicks.plot(((WorldServerAccessor) world).megatrace$pendingTicks().size());
+        }
+    }
+}
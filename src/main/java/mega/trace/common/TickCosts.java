@@ -0,0 +1,170 @@
+/*
+ * This file is part of MEGATrace.
+ *
+ * Copyright (C) 2024-2025 The MEGA Team
+ * All Rights Reserved
+ *
+ * The above copyright notice, this permission notice and the word "MEGA"
+ * shall be included in all copies or substantial portions of the Software.
+ *
+ * MEGATrace is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, only version 3 of the License.
+ *
+ * MEGATrace is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with MEGATrace.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package mega.trace.common;
+
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import it.unimi.dsi.fastutil.objects.Reference2ObjectOpenHashMap;
+import lombok.Getter;
+import lombok.val;
+import mega.trace.Config;
+import mega.trace.Share;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Adds up the time spent updating entities and tile entities by class, then plots the totals once per tick.
+ * <p>
+ * A zone per update would be millions of zones, this is two plots per class, named
+ * {@code sv_cost_<class>_ms} and {@code sv_cost_<class>_count}. Plots can't be unregistered, so only up to
+ * {@link Config#TICK_COSTS_MAX_CLASSES} classes get them: once a second, the classes that cost the most so far are
+ * given plots while the budget lasts. Everything else is plotted together as {@code sv_cost_other}. Classes that stop
+ * updating are plotted as 0 once, then left alone until they update again. Only touched from the server thread.
+ */
+public final class TickCosts {
+    private static final int ADMIT_INTERVAL_TICKS = 20;
+    private static final int ADMIT_PER_INTERVAL = 8;
+
+    @Getter
+    private static final TickCosts instance = new TickCosts();
+
+    private final int maxClasses = Config.TICK_COSTS_MAX_CLASSES;
+
+    private final Reference2ObjectOpenHashMap<Class<?>, Cost> costs = new Reference2ObjectOpenHashMap<>();
+    private final ObjectArrayList<Cost> costList = new ObjectArrayList<>();
+    private final ObjectArrayList<Cost> candidates = new ObjectArrayList<>();
+    private final Cost other = new Cost("other");
+    private int plottedClasses;
+    private int ticksSinceAdmit;
+    // Nothing is admitted once a plot fails to register, the registry does not free up
+    private boolean registryFull;
+
+    private TickCosts() {
+        other.plots();
+    }
+
+    public void add(Class<?> type, long nanos) {
+        var cost = costs.get(type);
+        if (cost == null) {
+            cost = new Cost(type.getName());
+            costs.put(type, cost);
+            costList.add(cost);
+        }
+        cost.nanos += nanos;
+        cost.count++;
+    }
+
+    /**
+     * Plots and resets the totals, called once at the end of each server tick.
+     */
+    public void flush() {
+        val connected = ViewerConnection.connected();
+        for (var i = 0; i < costList.size(); i++) {
+            val cost = costList.get(i);
+            cost.totalNanos += cost.nanos;
+            if (cost.timePlot == null) {
+                other.nanos += cost.nanos;
+                other.count += cost.count;
+            } else if (connected) {
+                cost.plot();
+            }
+            cost.nanos = 0;
+            cost.count = 0;
+        }
+        if (connected) {
+            other.plot();
+        }
+        other.nanos = 0;
+        other.count = 0;
+
+        if (++ticksSinceAdmit >= ADMIT_INTERVAL_TICKS) {
+            ticksSinceAdmit = 0;
+            admit();
+        }
+    }
+
+    private void admit() {
+        if (registryFull || plottedClasses >= maxClasses) {
+            return;
+        }
+        candidates.clear();
+        for (var i = 0; i < costList.size(); i++) {
+            val cost = costList.get(i);
+            if (cost.timePlot == null && cost.totalNanos > 0) {
+                candidates.add(cost);
+            }
+        }
+        candidates.sort((a, b) -> Long.compare(b.totalNanos, a.totalNanos));
+        val count = Math.min(candidates.size(), Math.min(ADMIT_PER_INTERVAL, maxClasses - plottedClasses));
+        for (var i = 0; i < count; i++) {
+            val cost = candidates.get(i);
+            if (!cost.plots()) {
+                Share.log.warn("Plot registry is full, tick costs of {} and further classes are not plotted.", cost.name);
+                registryFull = true;
+                break;
+            }
+            plottedClasses++;
+        }
+        candidates.clear();
+    }
+
+    private static final class Cost {
+        final String name;
+        @Nullable
+        Plot timePlot;
+        @Nullable
+        Plot countPlot;
+
+        long nanos;
+        int count;
+        // Over the whole session, to rank classes without plots
+        long totalNanos;
+        // A non-zero value was plotted last tick, so a 0 is still owed once the class stops updating
+        boolean plotted;
+
+        Cost(String name) {
+            this.name = name;
+        }
+
+        /**
+         * @return False if the plot registry was full, in which case the class stays in "other".
+         */
+        boolean plots() {
+            val prefix = "sv_cost_" + name;
+            val time = new Plot(prefix + "_ms", Plot.Format.NUMBER, false, true, 0);
+            val count = new Plot(prefix + "_count", Plot.Format.NUMBER, true, false, 0);
+            if (!time.valid() || !count.valid()) {
+                return false;
+            }
+            timePlot = time;
+            countPlot = count;
+            return true;
+        }
+
+        void plot() {
+            if (count > 0 || plotted) {
+                timePlot.plot(nanos / 1_000_000.0);
+                countPlot.plot(count);
+                plotted = count > 0;
+            }
+        }
+    }
+}
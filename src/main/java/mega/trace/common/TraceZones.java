@@ -0,0 +1,176 @@
+/*
+ * This file is part of MEGATrace.
+ *
+ * Copyright (C) 2024-2025 The MEGA Team
+ * All Rights Reserved
+ *
+ * The above copyright notice, this permission notice and the word "MEGA"
+ * shall be included in all copies or substantial portions of the Software.
+ *
+ * MEGATrace is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, only version 3 of the License.
+ *
+ * MEGATrace is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with MEGATrace.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package mega.trace.common;
+
+import it.unimi.dsi.fastutil.booleans.BooleanArrayList;
+import it.unimi.dsi.fastutil.longs.AbstractLongList;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import lombok.val;
+import mega.trace.MEGATrace;
+import mega.trace.natives.Tracy;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Runtime side of {@link mega.trace.service.TraceZone} and config driven instrumentation. Instrumented methods call
+ * {@link #begin(int)} on entry and {@link #end()} on every exit, with the index handed out by
+ * {@link #register(String, int)} during transformation. Methods also timed on the GPU use {@link #beginGpu(int)} and
+ * {@link #endGpu()} instead.
+ */
+public final class TraceZones {
+    /**
+     * Stands in for a zone that was not started, the same value the natives return on errors and ignore when ended.
+     */
+    public static final long NO_ZONE = -1;
+
+    private static final int UNREGISTERED = Integer.MIN_VALUE;
+
+    // Copied on write, registration happens while classes load, lookups on every call
+    private static volatile Zone[] zones = new Zone[0];
+
+    // Natives are loaded here rather than in a static initializer, as this class is loaded during transformation
+    private static final ThreadLocal<AbstractLongList> stacks = ThreadLocal.withInitial(() -> {
+        MEGATrace.initNatives();
+        Tracy.setThreadName(Thread.currentThread().getName().getBytes(StandardCharsets.UTF_8));
+        return new LongArrayList();
+    });
+
+    // GPU zones are only recorded on the thread that owns the GL context
+    @Nullable
+    private static volatile TracyProfiler gpuProfiler;
+    @Nullable
+    private static volatile Thread gpuThread;
+    // Only touched by the GPU thread. Whether each open GPU instrumented zone began a GPU zone, so the end matches
+    // even if GPU profiling was toggled in between
+    private static final BooleanArrayList gpuStack = new BooleanArrayList();
+    private static boolean gpuEnabled = true;
+
+    private TraceZones() {
+    }
+
+    /**
+     * Enables GPU timing for zones instrumented with it, when entered on the calling thread.
+     */
+    public static void gpuProfiler(@NotNull TracyProfiler profiler) {
+        gpuThread = Thread.currentThread();
+        gpuProfiler = profiler;
+    }
+
+    /**
+     * Follows the GPU profiler switch of the render thread's profiler, which is turned off around the client tick.
+     * Called on the GPU thread.
+     */
+    public static void enableGpu(boolean enable) {
+        gpuEnabled = enable;
+    }
+
+    /**
+     * Only stores the zone, as natives may not be loaded yet while classes are being transformed.
+     */
+    public static synchronized int register(@NotNull String name, int color) {
+        val index = zones.length;
+        val newZones = Arrays.copyOf(zones, index + 1);
+        newZones[index] = new Zone(name, color);
+        zones = newZones;
+        return index;
+    }
+
+    public static void begin(int index) {
+        val stack = stacks.get();
+        if (!ViewerConnection.connected()) {
+            stack.push(NO_ZONE);
+            return;
+        }
+        val zone = zones[index];
+        var id = zone.id;
+        if (id == UNREGISTERED) {
+            // Racing threads register the same name and color, and get the same id back
+            id = Tracy.registerZone(zone.name, zone.color);
+            zone.id = id;
+        }
+        stack.push(id < 0 ? Tracy.beginZone(zone.name, zone.color) : Tracy.beginZoneById(id));
+    }
+
+    public static void beginGpu(int index) {
+        begin(index);
+        val profiler = gpuProfiler;
+        if (profiler == null || Thread.currentThread() != gpuThread) {
+            return;
+        }
+        gpuStack.push(gpuEnabled);
+        if (gpuEnabled) {
+            profiler.beginZone(zones[index].nameString);
+        }
+    }
+
+    public static void endGpu() {
+        val profiler = gpuProfiler;
+        if (profiler != null && Thread.currentThread() == gpuThread && !gpuStack.isEmpty() && gpuStack.popBoolean()) {
+            profiler.endZone();
+        }
+        end();
+    }
+
+    /**
+     * Starts a zone registered with {@link Tracy#registerZone(byte[], int)}, for callers that hold on to it themselves
+     * instead of using the instrumented stack.
+     *
+     * @return The zone to pass to {@link #endZone(long)}, or {@link #NO_ZONE} if the id is invalid or no viewer is
+     * connected.
+     */
+    public static long beginZone(int id) {
+        if (id < 0 || !ViewerConnection.connected()) {
+            return NO_ZONE;
+        }
+        return Tracy.beginZoneById(id);
+    }
+
+    public static void endZone(long zone) {
+        if (zone != NO_ZONE) {
+            Tracy.endZone(zone);
+        }
+    }
+
+    public static void end() {
+        val stack = stacks.get();
+        if (!stack.isEmpty()) {
+            endZone(stack.popLong());
+        }
+    }
+
+    private static final class Zone {
+        final String nameString;
+        final byte[] name;
+        final int color;
+        int id = UNREGISTERED;
+
+        Zone(String name, int color) {
+            this.nameString = name;
+            this.name = name.getBytes(StandardCharsets.UTF_8);
+            this.color = color;
+        }
+    }
+}
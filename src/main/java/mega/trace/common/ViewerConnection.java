@@ -0,0 +1,68 @@
+/*
+ * This file is part of MEGATrace.
+ *
+ * Copyright (C) 2024-2025 The MEGA Team
+ * All Rights Reserved
+ *
+ * The above copyright notice, this permission notice and the word "MEGA"
+ * shall be included in all copies or substantial portions of the Software.
+ *
+ * MEGATrace is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, only version 3 of the License.
+ *
+ * MEGATrace is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with MEGATrace.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package mega.trace.common;
+
+import lombok.val;
+import mega.trace.Config;
+import mega.trace.natives.Tracy;
+
+/**
+ * Whether a Tracy viewer is connected, for natives built in on-demand mode, which drop everything recorded while
+ * nobody is connected. Producers check this first so they can skip their work entirely.
+ * <p>
+ * Polled on a background thread, so checking it is a single volatile read. Without {@link Config#ON_DEMAND} it is
+ * always true, as everything is queued until a viewer connects.
+ */
+public final class ViewerConnection {
+    private static final long POLL_INTERVAL_MS = 100;
+
+    private static volatile boolean connected = !Config.ON_DEMAND;
+
+    private ViewerConnection() {
+    }
+
+    public static boolean connected() {
+        return connected;
+    }
+
+    /**
+     * Called once the natives are loaded.
+     */
+    public static void startPolling() {
+        if (!Config.ON_DEMAND) {
+            return;
+        }
+        val poller = new Thread(() -> {
+            try {
+                while (true) {
+                    connected = Tracy.isConnected();
+                    Thread.sleep(POLL_INTERVAL_MS);
+                }
+            } catch (InterruptedException ignored) {
+            }
+        });
+        poller.setName("Tracy Connection");
+        poller.setDaemon(true);
+        poller.start();
+    }
+}
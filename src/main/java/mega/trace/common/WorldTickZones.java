@@ -0,0 +1,96 @@
+/*
+ * This file is part of MEGATrace.
+ *
+ * Copyright (C) 2024-2025 The MEGA Team
+ * All Rights Reserved
+ *
+ * The above copyright notice, this permission notice and the word "MEGA"
+ * shall be included in all copies or substantial portions of the Software.
+ *
+ * MEGATrace is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, only version 3 of the License.
+ *
+ * MEGATrace is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with MEGATrace.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package mega.trace.common;
+
+import lombok.val;
+import mega.trace.natives.Tracy;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Zones for the phases of a server world's tick, and plots of the block updates it ran, all named after the
+ * dimension so each one's share of the tick can be told apart.
+ * <p>
+ * Zones share the thread's stack with the zones of vanilla's profiler sections, so callers open and close each one
+ * inside a single section.
+ */
+public final class WorldTickZones {
+    private static final int ZONE_COLOR = 0x5080C0;
+
+    public enum Phase {
+        TICK_UPDATES("tickUpdates"),
+        BLOCKS_AND_AMBIANCE("tickBlocksAndAmbiance"),
+        ENTITIES("entities"),
+        TILE_ENTITIES("tileEntities"),
+        CHUNK_UNLOAD("chunkUnload"),
+        ;
+
+        final String name;
+
+        Phase(String name) {
+            this.name = name;
+        }
+    }
+
+    private final int[] zoneIds = new int[Phase.values().length];
+    private final Plot scheduledUpdatesPlot;
+    private final Plot randomTicksPlot;
+
+    private int scheduledUpdates;
+    private int randomTicks;
+
+    public WorldTickZones(int dimensionId) {
+        val prefix = "sv_dim" + dimensionId + "_";
+        for (val phase : Phase.values()) {
+            val name = (prefix + phase.name).getBytes(StandardCharsets.UTF_8);
+            zoneIds[phase.ordinal()] = Tracy.registerZone(name, ZONE_COLOR);
+        }
+        scheduledUpdatesPlot = new Plot(prefix + "scheduledUpdates", Plot.Format.NUMBER, true, true, 0);
+        randomTicksPlot = new Plot(prefix + "randomTicks", Plot.Format.NUMBER, true, true, 0);
+    }
+
+    /**
+     * @return The zone to pass to {@link TraceZones#endZone(long)}.
+     */
+    public long begin(Phase phase) {
+        return TraceZones.beginZone(zoneIds[phase.ordinal()]);
+    }
+
+    public void scheduledUpdate() {
+        scheduledUpdates++;
+    }
+
+    public void randomTick() {
+        randomTicks++;
+    }
+
+    /**
+     * Plots and resets the counts, called once at the end of each tick.
+     */
+    public void plotCounts() {
+        scheduledUpdatesPlot.plot(scheduledUpdates);
+        randomTicksPlot.plot(randomTicks);
+        scheduledUpdates = 0;
+        randomTicks = 0;
+    }
+}
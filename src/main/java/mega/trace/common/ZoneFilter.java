@@ -0,0 +1,196 @@
+/*
+ * This file is part of MEGATrace.
+ *
+ * Copyright (C) 2024-2025 The MEGA Team
+ * All Rights Reserved
+ *
+ * The above copyright notice, this permission notice and the word "MEGA"
+ * shall be included in all copies or substantial portions of the Software.
+ *
+ * MEGATrace is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, only version 3 of the License.
+ *
+ * MEGATrace is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with MEGATrace.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package mega.trace.common;
+
+import it.unimi.dsi.fastutil.booleans.BooleanArrayList;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Reference2ObjectOpenHashMap;
+import lombok.val;
+import mega.trace.Config;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Decides which profiler sections become zones, in front of a {@link TracyProfiler}.
+ * <p>
+ * A section is skipped together with everything under it when it is too deep for its profiler, matches
+ * {@link Config#FILTER_EXCLUDE}, or its name already started {@link Config#FILTER_MAX_PER_FRAME} zones this frame.
+ * With {@link Config#FILTER_INCLUDE} set, only matching sections and what is under them are traced. Sections outside
+ * of them are skipped on their own, so included sections further down are still found.
+ * <p>
+ * Every {@link #begin(String)} records whether it was forwarded, so {@link #end()} stays balanced with it. Inside a
+ * skipped subtree, sections are not looked at beyond that. All of this is tracked per thread, and frames are counted
+ * per thread too.
+ */
+public final class ZoneFilter {
+    private static final int MAX_CACHED_NAMES = 4096;
+
+    @Nullable
+    private static final NamePatterns include = NamePatterns.parse(Config.FILTER_INCLUDE);
+    @Nullable
+    private static final NamePatterns exclude = NamePatterns.parse(Config.FILTER_EXCLUDE);
+    private static final Object2IntOpenHashMap<String> maxDepths = parseMaxDepths(Config.FILTER_MAX_DEPTH);
+
+    private final int maxDepth;
+    private final int maxPerFrame = Config.FILTER_MAX_PER_FRAME;
+
+    // Profilers are shared between threads, each has its own section stack
+    private final OwnedThreadLocal<ThreadState> threadStates = new OwnedThreadLocal<>(ThreadState::new);
+
+    private ZoneFilter(int maxDepth) {
+        this.maxDepth = maxDepth;
+    }
+
+    /**
+     * @return A filter for the profiler with the given prefix, or null if nothing would be filtered for it.
+     */
+    @Nullable
+    public static ZoneFilter forPrefix(@NotNull String prefix) {
+        val maxDepth = maxDepths.getInt(prefix);
+        if (include == null && exclude == null && maxDepth == Integer.MAX_VALUE && Config.FILTER_MAX_PER_FRAME <= 0) {
+            return null;
+        }
+        return new ZoneFilter(maxDepth);
+    }
+
+    /**
+     * @return If the section should be forwarded to the profiler.
+     */
+    public boolean begin(@NotNull String name) {
+        val thread = threadStates.get();
+        val forwarded = thread.forwarded;
+        val depth = forwarded.size();
+        if (thread.skipDepth >= 0) {
+            forwarded.push(false);
+            return false;
+        }
+        if (depth == 0) {
+            thread.frame++;
+        }
+        if (depth >= maxDepth) {
+            return thread.skipSubtree(depth);
+        }
+
+        val state = thread.state(name);
+        if (state.excluded) {
+            return thread.skipSubtree(depth);
+        }
+        if (maxPerFrame > 0) {
+            if (state.frame != thread.frame) {
+                state.frame = thread.frame;
+                state.count = 0;
+            }
+            if (++state.count > maxPerFrame) {
+                return thread.skipSubtree(depth);
+            }
+        }
+        if (include != null && thread.includeDepth < 0) {
+            if (!state.included) {
+                forwarded.push(false);
+                return false;
+            }
+            thread.includeDepth = depth;
+        }
+        forwarded.push(true);
+        return true;
+    }
+
+    /**
+     * @return If the matching {@link #begin(String)} was forwarded to the profiler.
+     */
+    public boolean end() {
+        val thread = threadStates.get();
+        val forwarded = thread.forwarded;
+        if (forwarded.isEmpty()) {
+            // Unbalanced on the caller's side, let the profiler deal with it
+            return true;
+        }
+        val depth = forwarded.size() - 1;
+        if (depth == thread.skipDepth) {
+            thread.skipDepth = -1;
+        }
+        if (depth == thread.includeDepth) {
+            thread.includeDepth = -1;
+        }
+        return forwarded.popBoolean();
+    }
+
+    private static Object2IntOpenHashMap<String> parseMaxDepths(String list) {
+        val maxDepths = new Object2IntOpenHashMap<String>();
+        maxDepths.defaultReturnValue(Integer.MAX_VALUE);
+        for (val entry : list.split(",")) {
+            val eq = entry.indexOf('=');
+            if (eq < 0) {
+                continue;
+            }
+            try {
+                maxDepths.put(entry.substring(0, eq).trim(), Integer.parseInt(entry.substring(eq + 1).trim()));
+            } catch (NumberFormatException ignored) {
+            }
+        }
+        return maxDepths;
+    }
+
+    private static final class ThreadState {
+        // Section names are almost always literals, so they are looked up by identity
+        final Reference2ObjectOpenHashMap<String, NameState> names = new Reference2ObjectOpenHashMap<>();
+        final BooleanArrayList forwarded = new BooleanArrayList();
+        // Depth of the section that started a skipped subtree, or of the outermost included section
+        int skipDepth = -1;
+        int includeDepth = -1;
+        // Advanced every time a section begins at the root, which vanilla does once per frame and tick
+        int frame;
+
+        boolean skipSubtree(int depth) {
+            skipDepth = depth;
+            forwarded.push(false);
+            return false;
+        }
+
+        NameState state(String name) {
+            var state = names.get(name);
+            if (state == null) {
+                if (names.size() >= MAX_CACHED_NAMES) {
+                    // Generated names, start over rather than grow without bounds
+                    names.clear();
+                }
+                state = new NameState(include != null && include.matches(name),
+                                      exclude != null && exclude.matches(name));
+                names.put(name, state);
+            }
+            return state;
+        }
+    }
+
+    private static final class NameState {
+        final boolean included;
+        final boolean excluded;
+        int frame;
+        int count;
+
+        NameState(boolean included, boolean excluded) {
+            this.included = included;
+            this.excluded = excluded;
+        }
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ * This file is part of MEGATrace.
+ *
+ * Copyright (C) 2024-2025 The MEGA Team
+ * All Rights Reserved
+ *
+ * The above copyright notice, this permission notice and the word "MEGA"
+ * shall be included in all copies or substantial portions of the Software.
+ *
+ * MEGATrace is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, only version 3 of the License.
+ *
+ * MEGATrace is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with MEGATrace.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package mega.trace.common;
+
+import it.unimi.dsi.fastutil.objects.Reference2ObjectLinkedOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ReferenceLinkedOpenHashSet;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.val;
+import mega.trace.common.colors.Palette;
+import mega.trace.natives.Tracy;
+import org.jetbrains.annotations.NotNull;
+
+import java.lang.ref.WeakReference;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Resolves section names to zone ids pre-registered with {@link Tracy#registerZone(byte[], int)}.
+ * <p>
+ * Zone colors depend on the stack depth, so each name gets one id per depth it has been seen at.
+ * Once a name has been seen at a depth, resolving it again does not allocate or call into native code.
+ * <p>
+ * Names are keyed by identity, as sections are almost always string literals, which makes a lookup a pointer
+ * comparison. Names built at runtime never hit, so the cache is bounded and evicts the least recently used entry.
+ * A name is only admitted the second time the same instance is seen, so one-off names take the fallback path instead of
+ * each registering a native zone that is never freed.
+ */
+@Getter
+public final class ZoneRegistry {
+    public static final int INVALID_ID = -1;
+    public static final int DEFAULT_CAPACITY = 4096;
+
+    @Getter(AccessLevel.NONE)
+    private final Reference2ObjectLinkedOpenHashMap<String, Entry> entries = new Reference2ObjectLinkedOpenHashMap<>();
+    // Names seen once and not admitted yet, bounded like the entries
+    @Getter(AccessLevel.NONE)
+    private final ReferenceLinkedOpenHashSet<String> seenOnce = new ReferenceLinkedOpenHashSet<>();
+
+    @Getter(AccessLevel.NONE)
+    private final String prefix;
+    @Getter(AccessLevel.NONE)
+    private final Palette palette;
+    @Getter(AccessLevel.NONE)
+    private final int capacity;
+
+    // Every registry, so the sampling thread can read their counters. Registries of finished threads drop out
+    private static final ConcurrentLinkedQueue<WeakReference<ZoneRegistry>> registries = new ConcurrentLinkedQueue<>();
+
+    // Only written by the owning thread, the sampling thread may see them slightly behind
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    // Counters as of the previous sample, only touched by the sampling thread
+    @Getter(AccessLevel.NONE)
+    private long sampledHits;
+    @Getter(AccessLevel.NONE)
+    private long sampledMisses;
+    @Getter(AccessLevel.NONE)
+    private long sampledEvictions;
+
+    public ZoneRegistry(String prefix, Palette palette) {
+        this(prefix, palette, DEFAULT_CAPACITY);
+    }
+
+    public ZoneRegistry(String prefix, Palette palette, int capacity) {
+        this.prefix = prefix;
+        this.palette = palette;
+        this.capacity = capacity;
+        registries.add(new WeakReference<>(this));
+    }
+
+    /**
+     * Adds what all registries counted since the previous call to {@code totals}, as hits, misses and evictions.
+     * Meant to be called periodically from a single sampling thread.
+     */
+    public static void sampleAll(long @NotNull [] totals) {
+        val it = registries.iterator();
+        while (it.hasNext()) {
+            val registry = it.next().get();
+            if (registry == null) {
+                it.remove();
+                continue;
+            }
+            val hits = registry.hits;
+            val misses = registry.misses;
+            val evictions = registry.evictions;
+            totals[0] += hits - registry.sampledHits;
+            totals[1] += misses - registry.sampledMisses;
+            totals[2] += evictions - registry.sampledEvictions;
+            registry.sampledHits = hits;
+            registry.sampledMisses = misses;
+            registry.sampledEvictions = evictions;
+        }
+    }
+
+    /**
+     * @return The registered zone id, or {@link #INVALID_ID} if the name was not seen before or the native registry is
+     * full.
+     */
+    public int zoneId(@NotNull String name, int depth) {
+        var entry = entries.getAndMoveToLast(name);
+        if (entry != null) {
+            hits++;
+        } else {
+            misses++;
+            if (!seenOnce.remove(name)) {
+                if (seenOnce.size() >= capacity) {
+                    seenOnce.removeFirst();
+                }
+                seenOnce.add(name);
+                return INVALID_ID;
+            }
+            if (entries.size() >= capacity) {
+                entries.removeFirst();
+                evictions++;
+            }
+            entry = new Entry((prefix + name).getBytes(StandardCharsets.UTF_8));
+            entries.putAndMoveToLast(name, entry);
+        }
+        return entry.zoneId(depth);
+    }
+
+    /**
+     * @return The prefixed UTF-8 name, for the fallback path when {@link #zoneId(String, int)} fails.
+     */
+    public byte @NotNull [] encodedName(@NotNull String name) {
+        val entry = entries.get(name);
+        if (entry != null) {
+            return entry.name;
+        }
+        return (prefix + name).getBytes(StandardCharsets.UTF_8);
+    }
+
+    public int color(int depth) {
+        return palette.argb(depth);
+    }
+
+    private final class Entry {
+        // Ids are stored offset by one, so a freshly allocated array means "unregistered"
+        static final int UNREGISTERED = 0;
+        // Registration failed because the native registry is full, which it stays, so it is not retried
+        static final int FULL = -1;
+
+        final byte[] name;
+        int[] ids = new int[0];
+
+        Entry(byte[] name) {
+            this.name = name;
+        }
+
+        int zoneId(int depth) {
+            if (depth >= ids.length) {
+                ids = Arrays.copyOf(ids, Math.max(depth + 1, ids.length * 2));
+            }
+            val stored = ids[depth];
+            if (stored == FULL) {
+                return INVALID_ID;
+            }
+            if (stored != UNREGISTERED) {
+                return stored - 1;
+            }
+            val id = Tracy.registerZone(name, color(depth));
+            if (id < 0) {
+                ids[depth] = FULL;
+                return INVALID_ID;
+            }
+            ids[depth] = id + 1;
+            return id;
+        }
+    }
+}
@@ -22,5 +22,39 @@
 
 package mega.trace.common.colors;
 
-public record Palette(Lch lch, float sL, float sH) {
+import lombok.AccessLevel;
+import lombok.Getter;
+
+/**
+ * A depth-indexed color scheme. Colors for the first {@link #PRECOMPUTED_DEPTHS} depths are converted to ARGB up
+ * front, so looking one up is a single array load. Deeper stacks fall back to converting on demand.
+ */
+@Getter
+public final class Palette {
+    public static final int PRECOMPUTED_DEPTHS = 64;
+
+    private final Lch lch;
+    private final float sL;
+    private final float sH;
+
+    @Getter(AccessLevel.NONE)
+    private final int[] argb;
+
+    public Palette(Lch lch, float sL, float sH) {
+        this.lch = lch;
+        this.sL = sL;
+        this.sH = sH;
+
+        this.argb = new int[PRECOMPUTED_DEPTHS];
+        for (var depth = 0; depth < PRECOMPUTED_DEPTHS; depth++) {
+            argb[depth] = Rgb.fromPalette(this, depth).toArgbInt();
+        }
+    }
+
+    public int argb(int depth) {
+        if (depth < argb.length) {
+            return argb[depth];
+        }
+        return Rgb.fromPalette(this, depth).toArgbInt();
+    }
 }
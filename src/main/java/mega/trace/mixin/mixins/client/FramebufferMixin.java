@@ -0,0 +1,71 @@
+/*
+ * This file is part of MEGATrace.
+ *
+ * Copyright (C) 2024-2025 The MEGA Team
+ * All Rights Reserved
+ *
+ * The above copyright notice, this permission notice and the word "MEGA"
+ * shall be included in all copies or substantial portions of the Software.
+ *
+ * MEGATrace is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, only version 3 of the License.
+ *
+ * MEGATrace is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with MEGATrace.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package mega.trace.mixin.mixins.client;
+
+import lombok.val;
+import mega.trace.client.GPUMemory;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.Shadow;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+
+import net.minecraft.client.shader.Framebuffer;
+
+/**
+ * Framebuffers allocate their color texture and depth renderbuffer through raw GL and {@code OpenGlHelper} calls that
+ * don't carry the object name, so they are tracked here where the names are known. The color texture is freed through
+ * {@link TextureUtilMixin}.
+ */
+@Mixin(Framebuffer.class)
+public abstract class FramebufferMixin {
+    @Shadow
+    public int framebufferTextureWidth;
+    @Shadow
+    public int framebufferTextureHeight;
+    @Shadow
+    public int framebufferTexture;
+    @Shadow
+    public int depthBuffer;
+
+    @Inject(method = "createFramebuffer",
+            at = @At("RETURN"),
+            require = 1)
+    private void postCreateFramebuffer(int width, int height, CallbackInfo ci) {
+        // RGBA8 color, 24 bit depth
+        val size = (long) framebufferTextureWidth * framebufferTextureHeight * 4;
+        GPUMemory.textures.alloc(framebufferTexture, size);
+        if (depthBuffer > -1) {
+            GPUMemory.renderbuffers.alloc(depthBuffer, size);
+        }
+    }
+
+    @Inject(method = "deleteFramebuffer",
+            at = @At("HEAD"),
+            require = 1)
+    private void preDeleteFramebuffer(CallbackInfo ci) {
+        if (depthBuffer > -1) {
+            GPUMemory.renderbuffers.free(depthBuffer);
+        }
+    }
+}
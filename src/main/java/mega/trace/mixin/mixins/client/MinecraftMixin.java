@@ -24,10 +24,13 @@ package mega.trace.mixin.mixins.client;
 
 import com.llamalad7.mixinextras.injector.wrapoperation.Operation;
 import com.llamalad7.mixinextras.injector.wrapoperation.WrapOperation;
+import lombok.val;
+import mega.trace.client.ClientSampler;
 import mega.trace.client.GLAsyncTasks;
 import mega.trace.client.GPUProfiler;
 import mega.trace.client.ScreenshotHandler;
 import mega.trace.common.CPUProfiler;
+import mega.trace.common.TraceZones;
 import mega.trace.common.colors.Lch;
 import mega.trace.common.colors.Palette;
 import mega.trace.mixin.interfaces.IProfilerMixin;
@@ -35,6 +38,7 @@ import mega.trace.natives.Tracy;
 import org.spongepowered.asm.mixin.Final;
 import org.spongepowered.asm.mixin.Mixin;
 import org.spongepowered.asm.mixin.Shadow;
+import org.spongepowered.asm.mixin.Unique;
 import org.spongepowered.asm.mixin.injection.At;
 import org.spongepowered.asm.mixin.injection.Constant;
 import org.spongepowered.asm.mixin.injection.Inject;
@@ -44,12 +48,25 @@ import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
 import net.minecraft.client.Minecraft;
 import net.minecraft.profiler.Profiler;
 
+import java.nio.charset.StandardCharsets;
+
 @Mixin(Minecraft.class)
 public abstract class MinecraftMixin {
     @Final
     @Shadow
     public Profiler mcProfiler;
 
+    // Created once the natives are loaded, which the first CPUProfiler does
+    @Unique
+    private ClientSampler megatrace$sampler;
+    @Unique
+    private static final int MEGATRACE$ZONE_COLOR = 0x808080;
+    // Own zones rather than profiler sections, which would show up to other mods reading the vanilla profiler
+    @Unique
+    private int megatrace$asyncTasksZone;
+    @Unique
+    private int megatrace$screenshotZone;
+
     @Inject(method = "<init>",
             at = @At("RETURN"),
             require = 1)
@@ -60,6 +77,11 @@ public abstract class MinecraftMixin {
                 ),
                 0.0018133742f, 0.18914041f
         )));
+        megatrace$sampler = new ClientSampler();
+        megatrace$asyncTasksZone = Tracy.registerZone("cl_megatrace_asyncTasks".getBytes(StandardCharsets.UTF_8),
+                                                      MEGATRACE$ZONE_COLOR);
+        megatrace$screenshotZone = Tracy.registerZone("cl_megatrace_screenshot".getBytes(StandardCharsets.UTF_8),
+                                                      MEGATRACE$ZONE_COLOR);
     }
 
     @Inject(method = "startGame",
@@ -69,20 +91,25 @@ public abstract class MinecraftMixin {
         GLAsyncTasks.init();
         ((IProfilerMixin) mcProfiler).megatrace$gpuProfiler(GPUProfiler.instance());
         ((IProfilerMixin) mcProfiler).megatrace$enableGPUProfiler(true);
+        TraceZones.gpuProfiler(GPUProfiler.instance());
     }
 
     @Inject(method = "runGameLoop",
             at = @At("HEAD"),
             require = 1)
     private void preGameLoop(CallbackInfo ci) {
+        val zone = TraceZones.beginZone(megatrace$asyncTasksZone);
         GLAsyncTasks.instance().preRender();
+        TraceZones.endZone(zone);
         GPUProfiler.timeSync();
+        GPUProfiler.instance().plotStats();
     }
 
     @Inject(method = "runGameLoop",
             at = @At("RETURN"),
             require = 1)
     private void postGameLoop(CallbackInfo ci) {
+        megatrace$sampler.sample((Minecraft) (Object) this);
         Tracy.frameMark();
     }
 
@@ -92,10 +119,12 @@ public abstract class MinecraftMixin {
                    require = 1)
     private void doNotGPUProfilerRunTick(Minecraft instance, Operation<Void> original) {
         ((IProfilerMixin)instance.mcProfiler).megatrace$enableGPUProfiler(false);
+        TraceZones.enableGpu(false);
         try {
             original.call(instance);
         } finally {
             ((IProfilerMixin) instance.mcProfiler).megatrace$enableGPUProfiler(true);
+            TraceZones.enableGpu(true);
         }
     }
 
@@ -104,7 +133,9 @@ public abstract class MinecraftMixin {
                      target = "Lnet/minecraft/client/Minecraft;func_147120_f()V"),
             require = 1)
     private void preSwapBuffers(CallbackInfo ci) {
+        val zone = TraceZones.beginZone(megatrace$screenshotZone);
         ScreenshotHandler.instance().queueScreenshot();
+        TraceZones.endZone(zone);
         GLAsyncTasks.instance().postRender();
     }
 
@@ -0,0 +1,53 @@
+/*
+ * This file is part of MEGATrace.
+ *
+ * Copyright (C) 2024-2025 The MEGA Team
+ * All Rights Reserved
+ *
+ * The above copyright notice, this permission notice and the word "MEGA"
+ * shall be included in all copies or substantial portions of the Software.
+ *
+ * MEGATrace is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, only version 3 of the License.
+ *
+ * MEGATrace is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with MEGATrace.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package mega.trace.mixin.mixins.client;
+
+import mega.trace.client.GPUMemory;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+
+import net.minecraft.client.renderer.texture.TextureUtil;
+
+@Mixin(TextureUtil.class)
+public abstract class TextureUtilMixin {
+    @Inject(method = "allocateTextureImpl",
+            at = @At("HEAD"),
+            require = 1)
+    private static void allocateTexture(int texture, int mipLevels, int width, int height, float anisotropy, CallbackInfo ci) {
+        // RGBA8, one image per mip level
+        var size = 0L;
+        for (var level = 0; level <= mipLevels; level++) {
+            size += (long) (width >> level) * (height >> level) * 4;
+        }
+        GPUMemory.textures.alloc(texture, size);
+    }
+
+    @Inject(method = "deleteTexture",
+            at = @At("HEAD"),
+            require = 1)
+    private static void deleteTexture(int texture, CallbackInfo ci) {
+        GPUMemory.textures.free(texture);
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * This file is part of MEGATrace.
+ *
+ * Copyright (C) 2024-2025 The MEGA Team
+ * All Rights Reserved
+ *
+ * The above copyright notice, this permission notice and the word "MEGA"
+ * shall be included in all copies or substantial portions of the Software.
+ *
+ * MEGATrace is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, only version 3 of the License.
+ *
+ * MEGATrace is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with MEGATrace.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package mega.trace.mixin.mixins.client.neodymium;
+
+import com.llamalad7.mixinextras.injector.wrapoperation.Operation;
+import com.llamalad7.mixinextras.injector.wrapoperation.WrapOperation;
+import makamys.neodymium.renderer.GPUMemoryManager;
+import mega.trace.client.GPUMemory;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.injection.At;
+
+@Mixin(value = GPUMemoryManager.class,
+       remap = false)
+public abstract class GPUMemoryManagerMixin {
+    @WrapOperation(method = "<init>",
+                   at = @At(value = "INVOKE",
+                            target = "Lorg/lwjgl/opengl/GL15;glBufferData(IJI)V"),
+                   require = 1)
+    private void allocateBuffer(int target, long size, int usage, Operation<Void> original) {
+        original.call(target, size, usage);
+        GPUMemory.bufferData(target, size);
+    }
+
+    @WrapOperation(method = "destroy",
+                   at = @At(value = "INVOKE",
+                            target = "Lorg/lwjgl/opengl/GL15;glDeleteBuffers(I)V"),
+                   require = 1)
+    private void deleteBuffer(int buffer, Operation<Void> original) {
+        GPUMemory.buffers.free(buffer);
+        original.call(buffer);
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * This file is part of MEGATrace.
+ *
+ * Copyright (C) 2024-2025 The MEGA Team
+ * All Rights Reserved
+ *
+ * The above copyright notice, this permission notice and the word "MEGA"
+ * shall be included in all copies or substantial portions of the Software.
+ *
+ * MEGATrace is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, only version 3 of the License.
+ *
+ * MEGATrace is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with MEGATrace.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package mega.trace.mixin.mixins.client.optifine;
+
+import com.llamalad7.mixinextras.injector.wrapoperation.Operation;
+import com.llamalad7.mixinextras.injector.wrapoperation.WrapOperation;
+import mega.trace.client.GPUMemory;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.injection.At;
+import shadersmod.client.Shaders;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+
+@Mixin(value = Shaders.class,
+       remap = false)
+public abstract class ShadersMemoryMixin {
+    @WrapOperation(method = {"setupFrameBuffer", "setupShadowFrameBuffer"},
+                   at = @At(value = "INVOKE",
+                            target = "Lorg/lwjgl/opengl/GL11;glTexImage2D(IIIIIIIILjava/nio/ByteBuffer;)V"),
+                   require = 1)
+    private static void allocateTexture(int target, int level, int internalFormat, int width, int height, int border, int format, int type, ByteBuffer pixels, Operation<Void> original) {
+        original.call(target, level, internalFormat, width, height, border, format, type, pixels);
+        GPUMemory.texImage2D(level, internalFormat, width, height);
+    }
+
+    @WrapOperation(method = {"setupFrameBuffer", "setupShadowFrameBuffer", "uninit"},
+                   at = @At(value = "INVOKE",
+                            target = "Lorg/lwjgl/opengl/GL11;glDeleteTextures(Ljava/nio/IntBuffer;)V"),
+                   require = 1)
+    private static void deleteTextures(IntBuffer textures, Operation<Void> original) {
+        GPUMemory.textures.free(textures);
+        original.call(textures);
+    }
+}
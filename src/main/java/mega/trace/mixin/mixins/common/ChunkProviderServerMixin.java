@@ -0,0 +1,98 @@
+/*
+ * This file is part of MEGATrace.
+ *
+ * Copyright (C) 2024-2025 The MEGA Team
+ * All Rights Reserved
+ *
+ * The above copyright notice, this permission notice and the word "MEGA"
+ * shall be included in all copies or substantial portions of the Software.
+ *
+ * MEGATrace is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, only version 3 of the License.
+ *
+ * MEGATrace is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with MEGATrace.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package mega.trace.mixin.mixins.common;
+
+import com.llamalad7.mixinextras.injector.wrapoperation.Operation;
+import com.llamalad7.mixinextras.injector.wrapoperation.WrapOperation;
+import lombok.val;
+import mega.trace.common.ChunkIO;
+import mega.trace.common.ChunkIO.Phase;
+import mega.trace.common.TraceZones;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.injection.At;
+
+import net.minecraft.world.World;
+import net.minecraft.world.chunk.Chunk;
+import net.minecraft.world.chunk.IChunkProvider;
+import net.minecraft.world.chunk.storage.IChunkLoader;
+import net.minecraft.world.gen.ChunkProviderServer;
+
+@Mixin(ChunkProviderServer.class)
+public abstract class ChunkProviderServerMixin {
+    @WrapOperation(method = "originalLoadChunk",
+                   at = @At(value = "INVOKE",
+                            target = "Lnet/minecraft/world/gen/ChunkProviderServer;safeLoadChunk(II)Lnet/minecraft/world/chunk/Chunk;"),
+                   require = 1)
+    private Chunk wrapLoad(ChunkProviderServer instance, int x, int z, Operation<Chunk> original) {
+        val zone = ChunkIO.begin(Phase.LOAD);
+        try {
+            return original.call(instance, x, z);
+        } finally {
+            TraceZones.endZone(zone);
+        }
+    }
+
+    @WrapOperation(method = "originalLoadChunk",
+                   at = @At(value = "INVOKE",
+                            target = "Lnet/minecraft/world/chunk/IChunkProvider;provideChunk(II)Lnet/minecraft/world/chunk/Chunk;"),
+                   require = 1)
+    private Chunk wrapGenerate(IChunkProvider instance, int x, int z, Operation<Chunk> original) {
+        val zone = ChunkIO.begin(Phase.GENERATE);
+        try {
+            return original.call(instance, x, z);
+        } finally {
+            TraceZones.endZone(zone);
+        }
+    }
+
+    @WrapOperation(method = "originalLoadChunk",
+                   at = @At(value = "INVOKE",
+                            target = "Lnet/minecraft/world/chunk/Chunk;populateChunk(Lnet/minecraft/world/chunk/IChunkProvider;Lnet/minecraft/world/chunk/IChunkProvider;II)V"),
+                   require = 1)
+    private void wrapPopulate(Chunk instance,
+                              IChunkProvider provider,
+                              IChunkProvider generator,
+                              int x,
+                              int z,
+                              Operation<Void> original) {
+        val zone = ChunkIO.begin(Phase.POPULATE);
+        try {
+            original.call(instance, provider, generator, x, z);
+        } finally {
+            TraceZones.endZone(zone);
+        }
+    }
+
+    @WrapOperation(method = "safeSaveChunk",
+                   at = @At(value = "INVOKE",
+                            target = "Lnet/minecraft/world/chunk/storage/IChunkLoader;saveChunk(Lnet/minecraft/world/World;Lnet/minecraft/world/chunk/Chunk;)V"),
+                   require = 1)
+    private void wrapSave(IChunkLoader instance, World world, Chunk chunk, Operation<Void> original) {
+        val zone = ChunkIO.begin(Phase.SAVE);
+        try {
+            original.call(instance, world, chunk);
+        } finally {
+            TraceZones.endZone(zone);
+        }
+    }
+}
@@ -23,12 +23,15 @@
 package mega.trace.mixin.mixins.common;
 
 import mega.trace.common.CPUProfiler;
+import mega.trace.common.ServerSampler;
+import mega.trace.common.TickCosts;
 import mega.trace.common.colors.Lch;
 import mega.trace.common.colors.Palette;
 import mega.trace.mixin.interfaces.IProfilerMixin;
 import org.spongepowered.asm.mixin.Final;
 import org.spongepowered.asm.mixin.Mixin;
 import org.spongepowered.asm.mixin.Shadow;
+import org.spongepowered.asm.mixin.Unique;
 import org.spongepowered.asm.mixin.injection.At;
 import org.spongepowered.asm.mixin.injection.Inject;
 import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
@@ -42,6 +45,13 @@ public abstract class MinecraftServerMixin {
     @Shadow
     public Profiler theProfiler;
 
+    @Shadow
+    private int tickCounter;
+
+    // Created once the natives are loaded, which the first CPUProfiler does
+    @Unique
+    private ServerSampler megatrace$sampler;
+
     @Inject(method = "<init>",
             at = @At("RETURN"),
             require = 1)
@@ -55,5 +65,14 @@ public abstract class MinecraftServerMixin {
                         0.001071261f, 0.18384407f
                 )
         ));
+        megatrace$sampler = new ServerSampler();
+    }
+
+    @Inject(method = "tick",
+            at = @At("RETURN"),
+            require = 1)
+    private void postTick(CallbackInfo ci) {
+        megatrace$sampler.sample((MinecraftServer) (Object) this, tickCounter);
+        TickCosts.instance().flush();
     }
 }
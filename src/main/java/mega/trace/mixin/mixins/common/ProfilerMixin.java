@@ -22,9 +22,13 @@
 
 package mega.trace.mixin.mixins.common;
 
+import it.unimi.dsi.fastutil.bytes.ByteArrayList;
 import lombok.val;
 import mega.trace.common.CPUProfiler;
+import mega.trace.common.OwnedThreadLocal;
 import mega.trace.common.TracyProfiler;
+import mega.trace.common.ViewerConnection;
+import mega.trace.common.ZoneFilter;
 import mega.trace.common.colors.Lch;
 import mega.trace.common.colors.Palette;
 import mega.trace.mixin.interfaces.IProfilerMixin;
@@ -49,41 +53,103 @@ public abstract class ProfilerMixin implements IProfilerMixin {
     @Nullable
     private TracyProfiler megatrace$gpuProfiler = null;
 
+    @Unique
+    @Nullable
+    private ZoneFilter megatrace$cpuFilter = null;
+    @Unique
+    @Nullable
+    private ZoneFilter megatrace$gpuFilter = null;
+
     @Unique
     private boolean megatrace$gpuProfilerEnabled = false;
 
+    // Per thread, what each open section began, so its end matches even if the connection or profilers changed since.
+    // The connection state is latched at the thread's root section and inherited by everything under it.
+    @Unique
+    private static final byte MEGATRACE$CONNECTED = 1;
+    @Unique
+    private static final byte MEGATRACE$CPU_FILTER = 1 << 1;
+    @Unique
+    private static final byte MEGATRACE$CPU_ZONE = 1 << 2;
+    @Unique
+    private static final byte MEGATRACE$GPU_FILTER = 1 << 3;
+    @Unique
+    private static final byte MEGATRACE$GPU_ZONE = 1 << 4;
+
+    @Unique
+    private final OwnedThreadLocal<ByteArrayList> megatrace$sections = new OwnedThreadLocal<>(ByteArrayList::new);
+
     @Unique
     @Override
     public void megatrace$cpuProfiler(TracyProfiler cpuProfiler) {
         this.megatrace$cpuProfiler = cpuProfiler;
+        this.megatrace$cpuFilter = ZoneFilter.forPrefix(cpuProfiler.prefix());
     }
 
     @Unique
     @Override
     public void megatrace$gpuProfiler(TracyProfiler gpuProfiler) {
         this.megatrace$gpuProfiler = gpuProfiler;
+        this.megatrace$gpuFilter = ZoneFilter.forPrefix(gpuProfiler.prefix());
     }
 
     @Inject(method = "startSection",
             at = @At("HEAD"),
             require = 1)
     private void startSection(String name, CallbackInfo ci) {
-        if (megatrace$cpuProfiler != null) {
-            megatrace$cpuProfiler.beginZone(name);
+        val sections = megatrace$sections.get();
+        val connected = sections.isEmpty()
+                        ? ViewerConnection.connected()
+                        : (sections.topByte() & MEGATRACE$CONNECTED) != 0;
+        if (!connected) {
+            sections.push((byte) 0);
+            return;
+        }
+        var began = MEGATRACE$CONNECTED;
+        val cpuProfiler = megatrace$cpuProfiler;
+        if (cpuProfiler != null) {
+            val filter = megatrace$cpuFilter;
+            if (filter != null) {
+                began |= MEGATRACE$CPU_FILTER;
+            }
+            if (filter == null || filter.begin(name)) {
+                cpuProfiler.beginZone(name);
+                began |= MEGATRACE$CPU_ZONE;
+            }
         }
-        if (megatrace$gpuProfilerEnabled && megatrace$gpuProfiler != null) {
-            megatrace$gpuProfiler.beginZone(name);
+        val gpuProfiler = megatrace$gpuProfiler;
+        if (megatrace$gpuProfilerEnabled && gpuProfiler != null) {
+            val filter = megatrace$gpuFilter;
+            if (filter != null) {
+                began |= MEGATRACE$GPU_FILTER;
+            }
+            if (filter == null || filter.begin(name)) {
+                gpuProfiler.beginZone(name);
+                began |= MEGATRACE$GPU_ZONE;
+            }
         }
+        sections.push(began);
     }
 
     @Inject(method = "endSection",
             at = @At("HEAD"),
             require = 1)
     private void endSection(CallbackInfo ci) {
-        if (megatrace$gpuProfilerEnabled && megatrace$gpuProfiler != null) {
+        val sections = megatrace$sections.get();
+        if (sections.isEmpty()) {
+            return;
+        }
+        val began = sections.popByte();
+        if ((began & MEGATRACE$GPU_FILTER) != 0 && megatrace$gpuFilter != null) {
+            megatrace$gpuFilter.end();
+        }
+        if ((began & MEGATRACE$GPU_ZONE) != 0 && megatrace$gpuProfiler != null) {
             megatrace$gpuProfiler.endZone();
         }
-        if (megatrace$cpuProfiler != null) {
+        if ((began & MEGATRACE$CPU_FILTER) != 0 && megatrace$cpuFilter != null) {
+            megatrace$cpuFilter.end();
+        }
+        if ((began & MEGATRACE$CPU_ZONE) != 0 && megatrace$cpuProfiler != null) {
             megatrace$cpuProfiler.endZone();
         }
     }
@@ -106,7 +172,7 @@ public abstract class ProfilerMixin implements IProfilerMixin {
         );
 
         val prefix = profilerName.substring("__MEGATRACE__:".length());
-        this.megatrace$cpuProfiler = new CPUProfiler(prefix, color);
+        megatrace$cpuProfiler(new CPUProfiler(prefix, color));
         cir.setReturnValue(null);
     }
 
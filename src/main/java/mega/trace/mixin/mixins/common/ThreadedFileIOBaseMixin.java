@@ -0,0 +1,88 @@
+/*
+ * This file is part of MEGATrace.
+ *
+ * Copyright (C) 2024-2025 The MEGA Team
+ * All Rights Reserved
+ *
+ * The above copyright notice, this permission notice and the word "MEGA"
+ * shall be included in all copies or substantial portions of the Software.
+ *
+ * MEGATrace is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, only version 3 of the License.
+ *
+ * MEGATrace is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with MEGATrace.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package mega.trace.mixin.mixins.common;
+
+import com.llamalad7.mixinextras.injector.wrapoperation.Operation;
+import com.llamalad7.mixinextras.injector.wrapoperation.WrapOperation;
+import lombok.val;
+import mega.trace.common.ChunkIO;
+import mega.trace.common.ChunkIO.Phase;
+import mega.trace.common.TraceZones;
+import mega.trace.common.ViewerConnection;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.Shadow;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+
+import net.minecraft.world.storage.IThreadedFileIO;
+import net.minecraft.world.storage.ThreadedFileIOBase;
+
+import java.util.List;
+
+@Mixin(ThreadedFileIOBase.class)
+public abstract class ThreadedFileIOBaseMixin {
+    @Shadow
+    private List<IThreadedFileIO> threadedIOQueue;
+
+    @Inject(method = "processQueue",
+            at = @At("HEAD"),
+            require = 1)
+    private void preProcessQueue(CallbackInfo ci) {
+        ChunkIO.ioThreadStarted();
+    }
+
+    @WrapOperation(method = "processQueue",
+                   at = @At(value = "INVOKE",
+                            target = "Lnet/minecraft/world/storage/IThreadedFileIO;writeNextIO()Z"),
+                   require = 1)
+    private boolean wrapWrite(IThreadedFileIO instance, Operation<Boolean> original) {
+        val zone = ChunkIO.begin(Phase.WRITE);
+        try {
+            return original.call(instance);
+        } finally {
+            TraceZones.endZone(zone);
+        }
+    }
+
+    @Inject(method = "processQueue",
+            at = @At("RETURN"),
+            require = 1)
+    private void postProcessQueue(CallbackInfo ci) {
+        if (!ViewerConnection.connected()) {
+            // Still called, so the write rate doesn't include bytes from before the viewer connected
+            ChunkIO.sample(0);
+            return;
+        }
+        var queued = 0;
+        // The server thread queues into this list, so it's locked while walked
+        synchronized (threadedIOQueue) {
+            for (val io : threadedIOQueue) {
+                if (io instanceof AnvilChunkLoaderAccessor) {
+                    queued += ((AnvilChunkLoaderAccessor) io).megatrace$chunksToRemove().size();
+                }
+            }
+        }
+        ChunkIO.sample(queued);
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * This file is part of MEGATrace.
+ *
+ * Copyright (C) 2024-2025 The MEGA Team
+ * All Rights Reserved
+ *
+ * The above copyright notice, this permission notice and the word "MEGA"
+ * shall be included in all copies or substantial portions of the Software.
+ *
+ * MEGATrace is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, only version 3 of the License.
+ *
+ * MEGATrace is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with MEGATrace.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package mega.trace.mixin.mixins.common;
+
+import com.llamalad7.mixinextras.injector.wrapoperation.Operation;
+import com.llamalad7.mixinextras.injector.wrapoperation.WrapOperation;
+import lombok.val;
+import mega.trace.common.TickCosts;
+import mega.trace.common.TraceZones;
+import mega.trace.common.ViewerConnection;
+import mega.trace.common.WorldTickZones.Phase;
+import mega.trace.mixin.interfaces.IWorldServerMixin;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.Unique;
+import org.spongepowered.asm.mixin.injection.At;
+
+import net.minecraft.entity.Entity;
+import net.minecraft.profiler.Profiler;
+import net.minecraft.tileentity.TileEntity;
+import net.minecraft.world.World;
+
+/**
+ * Entities and tile entities are updated in the same method. Their zones are opened and closed between vanilla's
+ * sections, all inside {@code entities}, so they nest with the zones those sections become. Each update is also
+ * timed into {@link TickCosts}. Only server worlds are traced.
+ */
+@Mixin(World.class)
+public abstract class WorldMixin {
+    @Unique
+    private long megatrace$updateZone = TraceZones.NO_ZONE;
+
+    @WrapOperation(method = "updateEntities",
+                   at = @At(value = "INVOKE_STRING",
+                            target = "Lnet/minecraft/profiler/Profiler;startSection(Ljava/lang/String;)V",
+                            args = "ldc=entities"),
+                   require = 1)
+    private void beginEntities(Profiler instance, String name, Operation<Void> original) {
+        original.call(instance, name);
+        if (this instanceof IWorldServerMixin) {
+            megatrace$updateZone = ((IWorldServerMixin) this).megatrace$tickZones().begin(Phase.ENTITIES);
+        }
+    }
+
+    @WrapOperation(method = "updateEntities",
+                   at = @At(value = "INVOKE_STRING",
+                            target = "Lnet/minecraft/profiler/Profiler;endStartSection(Ljava/lang/String;)V",
+                            args = "ldc=blockEntities"),
+                   require = 1)
+    private void beginTileEntities(Profiler instance, String name, Operation<Void> original) {
+        if (!(this instanceof IWorldServerMixin)) {
+            original.call(instance, name);
+            return;
+        }
+        // Split up, so the entities zone closes after the section opened inside it
+        instance.endSection();
+        TraceZones.endZone(megatrace$updateZone);
+        megatrace$updateZone = ((IWorldServerMixin) this).megatrace$tickZones().begin(Phase.TILE_ENTITIES);
+        instance.startSection(name);
+    }
+
+    @WrapOperation(method = "updateEntities",
+                   at = @At(value = "INVOKE_STRING",
+                            target = "Lnet/minecraft/profiler/Profiler;endStartSection(Ljava/lang/String;)V",
+                            args = "ldc=pendingBlockEntities"),
+                   require = 1)
+    private void endTileEntities(Profiler instance, String name, Operation<Void> original) {
+        if (!(this instanceof IWorldServerMixin)) {
+            original.call(instance, name);
+            return;
+        }
+        instance.endSection();
+        TraceZones.endZone(megatrace$updateZone);
+        megatrace$updateZone = TraceZones.NO_ZONE;
+        instance.startSection(name);
+    }
+
+    @WrapOperation(method = "updateEntities",
+                   at = @At(value = "INVOKE",
+                            target = "Lnet/minecraft/world/World;updateEntity(Lnet/minecraft/entity/Entity;)V"),
+                   require = 1)
+    private void timeEntity(World instance, Entity entity, Operation<Void> original) {
+        if (!(this instanceof IWorldServerMixin) || !ViewerConnection.connected()) {
+            original.call(instance, entity);
+            return;
+        }
+        val start = System.nanoTime();
+        try {
+            original.call(instance, entity);
+        } finally {
+            TickCosts.instance().add(entity.getClass(), System.nanoTime() - start);
+        }
+    }
+
+    @WrapOperation(method = "updateEntities",
+                   at = @At(value = "INVOKE",
+                            target = "Lnet/minecraft/tileentity/TileEntity;updateEntity()V"),
+                   require = 1)
+    private void timeTileEntity(TileEntity instance, Operation<Void> original) {
+        if (!(this instanceof IWorldServerMixin) || !ViewerConnection.connected()) {
+            original.call(instance);
+            return;
+        }
+        val start = System.nanoTime();
+        try {
+            original.call(instance);
+        } finally {
+            TickCosts.instance().add(instance.getClass(), System.nanoTime() - start);
+        }
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * This file is part of MEGATrace.
+ *
+ * Copyright (C) 2024-2025 The MEGA Team
+ * All Rights Reserved
+ *
+ * The above copyright notice, this permission notice and the word "MEGA"
+ * shall be included in all copies or substantial portions of the Software.
+ *
+ * MEGATrace is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, only version 3 of the License.
+ *
+ * MEGATrace is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with MEGATrace.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package mega.trace.mixin.mixins.common;
+
+import com.llamalad7.mixinextras.injector.wrapoperation.Operation;
+import com.llamalad7.mixinextras.injector.wrapoperation.WrapOperation;
+import lombok.val;
+import mega.trace.common.TraceZones;
+import mega.trace.common.WorldTickZones;
+import mega.trace.common.WorldTickZones.Phase;
+import mega.trace.mixin.interfaces.IWorldServerMixin;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.Unique;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfoReturnable;
+
+import net.minecraft.world.WorldServer;
+import net.minecraft.world.chunk.IChunkProvider;
+
+@Mixin(WorldServer.class)
+public abstract class WorldServerMixin implements IWorldServerMixin {
+    @Unique
+    private WorldTickZones megatrace$tickZones;
+
+    @Unique
+    @Override
+    public WorldTickZones megatrace$tickZones() {
+        // The provider, and with it the dimension, is only known once the constructor ran
+        if (megatrace$tickZones == null) {
+            megatrace$tickZones = new WorldTickZones(((WorldServer) (Object) this).provider.dimensionId);
+        }
+        return megatrace$tickZones;
+    }
+
+    @WrapOperation(method = "tick",
+                   at = @At(value = "INVOKE",
+                            target = "Lnet/minecraft/world/WorldServer;tickUpdates(Z)Z"),
+                   require = 1)
+    private boolean wrapTickUpdates(WorldServer instance, boolean runAllPending, Operation<Boolean> original) {
+        val zone = megatrace$tickZones().begin(Phase.TICK_UPDATES);
+        try {
+            return original.call(instance, runAllPending);
+        } finally {
+            TraceZones.endZone(zone);
+        }
+    }
+
+    // tickBlocksAndAmbiance
+    @WrapOperation(method = "tick",
+                   at = @At(value = "INVOKE",
+                            target = "Lnet/minecraft/world/WorldServer;func_147456_g()V"),
+                   require = 1)
+    private void wrapTickBlocks(WorldServer instance, Operation<Void> original) {
+        val zone = megatrace$tickZones().begin(Phase.BLOCKS_AND_AMBIANCE);
+        try {
+            original.call(instance);
+        } finally {
+            TraceZones.endZone(zone);
+        }
+    }
+
+    @WrapOperation(method = "tick",
+                   at = @At(value = "INVOKE",
+                            target = "Lnet/minecraft/world/chunk/IChunkProvider;unloadQueuedChunks()Z"),
+                   require = 1)
+    private boolean wrapUnloadChunks(IChunkProvider instance, Operation<Boolean> original) {
+        val zone = megatrace$tickZones().begin(Phase.CHUNK_UNLOAD);
+        try {
+            return original.call(instance);
+        } finally {
+            TraceZones.endZone(zone);
+        }
+    }
+
+    @Inject(method = "tick",
+            at = @At("RETURN"),
+            require = 1)
+    private void postTick(CallbackInfo ci) {
+        megatrace$tickZones().plotCounts();
+    }
+
+    @Inject(method = "tickUpdates",
+            at = @At(value = "INVOKE",
+                     target = "Lnet/minecraft/block/Block;updateTick(Lnet/minecraft/world/World;IIILjava/util/Random;)V"),
+            require = 1)
+    private void countScheduledUpdate(boolean runAllPending, CallbackInfoReturnable<Boolean> cir) {
+        megatrace$tickZones().scheduledUpdate();
+    }
+
+    @Inject(method = "func_147456_g",
+            at = @At(value = "INVOKE",
+                     target = "Lnet/minecraft/block/Block;updateTick(Lnet/minecraft/world/World;IIILjava/util/Random;)V"),
+            require = 1)
+    private void countRandomTick(CallbackInfo ci) {
+        megatrace$tickZones().randomTick();
+    }
+}
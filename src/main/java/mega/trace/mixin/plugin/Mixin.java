@@ -43,9 +43,21 @@ public enum Mixin implements IMixin {
     MinecraftServerMixin(Side.COMMON, always(), "MinecraftServerMixin"),
     ProfilerMixin(Side.COMMON, always(), "ProfilerMixin"),
     NetHandlerPlayServerMixin(Side.COMMON, always(), "NetHandlerPlayServerMixin"),
+    WorldServerAccessor(Side.COMMON, always(), "WorldServerAccessor"),
+    WorldServerMixin(Side.COMMON, always(), "WorldServerMixin"),
+    WorldMixin(Side.COMMON, always(), "WorldMixin"),
+    ChunkProviderServerMixin(Side.COMMON, always(), "ChunkProviderServerMixin"),
+    ThreadedFileIOBaseMixin(Side.COMMON, always(), "ThreadedFileIOBaseMixin"),
+    AnvilChunkLoaderAccessor(Side.COMMON, always(), "AnvilChunkLoaderAccessor"),
+    RegionFileMixin(Side.COMMON, always(), "RegionFileMixin"),
+
+    TextureUtilMixin(Side.CLIENT, always(), "TextureUtilMixin"),
+    FramebufferMixin(Side.CLIENT, always(), "FramebufferMixin"),
 
     neodymium_NeoRendererMixin(Side.CLIENT, require(NEODYMIUM), "neodymium.NeoRendererMixin"),
+    neodymium_GPUMemoryManagerMixin(Side.CLIENT, require(NEODYMIUM), "neodymium.GPUMemoryManagerMixin"),
     optifine_ShadersMixin(Side.CLIENT, require(OPTIFINE), "optifine.ShadersMixin"),
+    optifine_ShadersMemoryMixin(Side.CLIENT, require(OPTIFINE), "optifine.ShadersMemoryMixin"),
     ;
 
     @Getter
@@ -27,7 +27,12 @@ import com.falsepattern.lib.mixin.IMixinPlugin;
 import com.falsepattern.lib.mixin.ITargetedMod;
 import lombok.Getter;
 import lombok.experimental.Accessors;
+import mega.trace.Config;
 import mega.trace.Tags;
+import mega.trace.client.TrackingAllocator;
+import mega.trace.transform.DirectBufferTransformer;
+import mega.trace.transform.TraceZoneTransformer;
+import net.minecraft.launchwrapper.Launch;
 import org.apache.logging.log4j.Logger;
 
 @Accessors(fluent = false)
@@ -35,6 +40,20 @@ public class MixinPlugin implements IMixinPlugin {
     @Getter
     private final Logger logger = IMixinPlugin.createLogger(Tags.MOD_NAME + " Init");
 
+    @Override
+    public void onLoad(String mixinPackage) {
+        IMixinPlugin.super.onLoad(mixinPackage);
+        // Registered this early so mod classes are instrumented as they load
+        Launch.classLoader.registerTransformer(TraceZoneTransformer.class.getName());
+        if (Config.OFFHEAP_TRACKING) {
+            Launch.classLoader.registerTransformer(DirectBufferTransformer.class.getName());
+            // LWJGL is only there on the client
+            if (Launch.classLoader.getResource("org/lwjgl/system/MemoryUtil.class") != null) {
+                TrackingAllocator.install();
+            }
+        }
+    }
+
     @Override
     public ITargetedMod[] getTargetedModEnumValues() {
         return TargetedMod.values();
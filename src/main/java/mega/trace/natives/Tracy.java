@@ -22,9 +22,11 @@
 
 package mega.trace.natives;
 
+import mega.trace.Config;
+
 public class Tracy {
     public static void load() throws UnsupportedPlatformException {
-        new NativeLoader().loadNative(Tracy.class, "Tracy");
+        new NativeLoader().loadNative(Tracy.class, Config.ON_DEMAND ? "TracyOnDemand" : "Tracy");
     }
 
     public static native void init();
@@ -33,23 +35,108 @@ public class Tracy {
 
     public static native void frameMark();
 
+    /**
+     * @return If a viewer is currently connected. Only polled with the on-demand natives, see
+     * {@link mega.trace.common.ViewerConnection}.
+     */
+    public static native boolean isConnected();
+
+    /**
+     * Names the calling thread in Tracy.
+     */
+    public static native void setThreadName(byte[] name);
+
     public static native void message(byte[] msg);
 
     public static native void messageColor(byte[] msg, int color);
 
+    /**
+     * @return The number of distinct messages interned natively. Capped, messages past the cap are sent uninterned.
+     */
+    public static native long messagePoolSize();
+
     public static native long beginZone(byte[] name, int color);
 
     public static native void endZone(long zone);
 
+    /**
+     * Registers a zone name and color with the native side, so it can be started without passing the name again.
+     *
+     * @return The id to pass to {@link #beginZoneById(int)} and {@link #gpuBeginZoneById(int)}, or a negative value if the registry is full.
+     */
+    public static native int registerZone(byte[] name, int color);
+
+    public static native long beginZoneById(int id);
+
     public static native void gpuInit(long gpuTime);
 
     public static native void gpuTimeSync(long gpuTime);
 
     public static native short gpuBeginZone(byte[] name, int color);
 
+    public static native short gpuBeginZoneById(int id);
+
     public static native short gpuEndZone();
 
     public static native void gpuTime(short queryId, long gpuTime);
 
+    /**
+     * Submits {@code count} GPU timestamps in one call.
+     *
+     * @param times Pairs of query id and GPU time, laid out as {@code [queryId0, gpuTime0, queryId1, gpuTime1, ...]}.
+     */
+    public static native void gpuTimeBatch(long[] times, int count);
+
+    /**
+     * Creates the GPU context GC pauses are reported on.
+     *
+     * @param gcTime The current time on the clock later passed to {@link #gcPause(int, long, long)}, in nanoseconds.
+     */
+    public static native void gcInit(long gcTime);
+
+    /**
+     * Reports a finished GC pause as a zone on the GC context.
+     *
+     * @param id A zone registered with {@link #registerZone(byte[], int)}.
+     */
+    public static native void gcPause(int id, long start, long end);
+
+    /**
+     * Registers a plot name with the native side, so values can be plotted without passing the name again.
+     *
+     * @return The id to pass to {@link #plot(int, double)}, or a negative value if the registry is full.
+     */
+    public static native int registerPlot(byte[] name);
+
+    public static native void plot(int id, double value);
+
+    /**
+     * @param format 0 for plain numbers, 1 for memory sizes in bytes, 2 for percentages.
+     * @param color  Line color as {@code 0xRRGGBB}, 0 uses Tracy's default.
+     */
+    public static native void plotConfig(int id, int format, boolean step, boolean fill, int color);
+
+    /**
+     * Registers a named memory pool, so allocations can be reported against it by id.
+     *
+     * @return The pool id, or -1 if no more pools can be registered.
+     */
+    public static native int registerMemoryPool(byte[] name);
+
+    /**
+     * @param address Unique within the pool while allocated, doesn't have to be a real pointer.
+     */
+    public static native void memAlloc(int pool, long address, long size);
+
+    public static native void memFree(int pool, long address);
+
+    /**
+     * Submits {@code count} allocations and frees in one call, in order.
+     *
+     * @param events Triples of pool, address and size, a negative size being a free, laid out as
+     *               {@code [pool0, address0, size0, pool1, address1, size1, ...]}.
+     */
+    public static native void memBatch(long[] events, int count);
+
     public static native void frameImage(byte offset, long image, short width, short height);
 }
@@ -24,14 +24,19 @@ package mega.trace.service;
 
 import lombok.NoArgsConstructor;
 import lombok.NonNull;
+import mega.trace.common.Plot;
 import mega.trace.natives.Tracy;
 
 import net.minecraft.profiler.Profiler;
 
 import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 @NoArgsConstructor
 public final class MEGATraceServiceImpl implements MEGATraceService {
+    private final Map<String, Plot> plots = new ConcurrentHashMap<>();
+
     @Override
     public void markProfiler(@NonNull Object profiler, @NonNull String prefix, int color) {
         if (!(profiler instanceof Profiler mcProfiler)) {
@@ -60,4 +65,28 @@ public final class MEGATraceServiceImpl implements MEGATraceService {
     public void messageColor(byte[] msg, int color) {
         Tracy.messageColor(msg, color);
     }
+
+    // Not part of MEGATraceService yet, as the service API is released separately
+
+    /**
+     * @return A handle for {@link #plot(int, double)}, or -1 if no more plots can be registered.
+     */
+    public int registerPlot(@NonNull String name) {
+        return Tracy.registerPlot(name.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public void plot(int plot, double value) {
+        Plot.plot(plot, value);
+    }
+
+    /**
+     * Registers the plot on first use, prefer {@link #registerPlot(String)} for values plotted often.
+     */
+    public void plot(@NonNull String name, double value) {
+        var plot = plots.get(name);
+        if (plot == null) {
+            plot = plots.computeIfAbsent(name, Plot::new);
+        }
+        plot.plot(value);
+    }
 }
@@ -0,0 +1,50 @@
+/*
+ * This file is part of MEGATrace.
+ *
+ * Copyright (C) 2024-2025 The MEGA Team
+ * All Rights Reserved
+ *
+ * The above copyright notice, this permission notice and the word "MEGA"
+ * shall be included in all copies or substantial portions of the Software.
+ *
+ * MEGATrace is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, only version 3 of the License.
+ *
+ * MEGATrace is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with MEGATrace.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package mega.trace.service;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a method to be wrapped in a Tracy zone when its class is loaded with MEGATrace present.
+ * <p>
+ * The zone is registered once when the class is transformed, so entering the method doesn't allocate. Without
+ * MEGATrace the annotation does nothing, and isn't even visible at runtime.
+ * <p>
+ * Constructors and static initializers are not instrumented.
+ */
+@Retention(RetentionPolicy.CLASS)
+@Target(ElementType.METHOD)
+public @interface TraceZone {
+    /**
+     * The zone name. Defaults to {@code SimpleClassName.methodName}.
+     */
+    String value() default "";
+
+    /**
+     * The zone color as {@code 0xRRGGBB}. 0 uses Tracy's default color.
+     */
+    int color() default 0;
+}
@@ -0,0 +1,91 @@
+/*
+ * This file is part of MEGATrace.
+ *
+ * Copyright (C) 2024-2025 The MEGA Team
+ * All Rights Reserved
+ *
+ * The above copyright notice, this permission notice and the word "MEGA"
+ * shall be included in all copies or substantial portions of the Software.
+ *
+ * MEGATrace is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, only version 3 of the License.
+ *
+ * MEGATrace is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with MEGATrace.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package mega.trace.transform;
+
+import lombok.val;
+import mega.trace.Share;
+import mega.trace.common.OffHeapTracker;
+import net.minecraft.launchwrapper.IClassTransformer;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Points {@code ByteBuffer.allocateDirect} call sites at {@link OffHeapTracker#allocateDirect(int)}, as the JDK's own
+ * classes can't be transformed. Only registered with {@link mega.trace.Config#OFFHEAP_TRACKING}.
+ */
+public final class DirectBufferTransformer implements IClassTransformer {
+    private static final String BYTE_BUFFER = "java/nio/ByteBuffer";
+    private static final String ALLOCATE_DIRECT = "allocateDirect";
+    private static final String ALLOCATE_DIRECT_DESC = "(I)Ljava/nio/ByteBuffer;";
+    private static final byte[] ALLOCATE_DIRECT_BYTES = ALLOCATE_DIRECT.getBytes(StandardCharsets.UTF_8);
+    private static final String TRACKER_OWNER = Type.getInternalName(OffHeapTracker.class);
+
+    @Override
+    public byte[] transform(String name, String transformedName, byte[] basicClass) {
+        if (basicClass == null || transformedName.startsWith("mega.trace.") ||
+            !TraceZoneTransformer.contains(basicClass, ALLOCATE_DIRECT_BYTES)) {
+            return basicClass;
+        }
+        try {
+            val reader = new ClassReader(basicClass);
+            // Only a call target changes, so everything else is copied over as is
+            val writer = new ClassWriter(reader, 0);
+            val visitor = new RedirectingClassVisitor(writer);
+            reader.accept(visitor, 0);
+            return visitor.redirected ? writer.toByteArray() : basicClass;
+        } catch (Exception e) {
+            Share.log.error("Failed to redirect direct buffer allocations in " + transformedName, e);
+            return basicClass;
+        }
+    }
+
+    private static final class RedirectingClassVisitor extends ClassVisitor {
+        boolean redirected;
+
+        RedirectingClassVisitor(ClassVisitor cv) {
+            super(Opcodes.ASM5, cv);
+        }
+
+        @Override
+        public MethodVisitor visitMethod(int access, String name, String desc, String signature, String[] exceptions) {
+            return new MethodVisitor(Opcodes.ASM5, super.visitMethod(access, name, desc, signature, exceptions)) {
+                @Override
+                public void visitMethodInsn(int opcode, String owner, String name, String desc, boolean itf) {
+                    if (opcode == Opcodes.INVOKESTATIC && BYTE_BUFFER.equals(owner) && ALLOCATE_DIRECT.equals(name) &&
+                        ALLOCATE_DIRECT_DESC.equals(desc)) {
+                        redirected = true;
+                        super.visitMethodInsn(opcode, TRACKER_OWNER, name, desc, false);
+                        return;
+                    }
+                    super.visitMethodInsn(opcode, owner, name, desc, itf);
+                }
+            };
+        }
+    }
+}
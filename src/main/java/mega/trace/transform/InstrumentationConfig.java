@@ -0,0 +1,166 @@
+/*
+ * This file is part of MEGATrace.
+ *
+ * Copyright (C) 2024-2025 The MEGA Team
+ * All Rights Reserved
+ *
+ * The above copyright notice, this permission notice and the word "MEGA"
+ * shall be included in all copies or substantial portions of the Software.
+ *
+ * MEGATrace is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, only version 3 of the License.
+ *
+ * MEGATrace is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with MEGATrace.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package mega.trace.transform;
+
+import it.unimi.dsi.fastutil.objects.Object2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import lombok.val;
+import mega.trace.Share;
+import mega.trace.common.NamePatterns;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Methods to instrument, read from a plain text file with one entry per line:
+ * <pre>
+ * # Comment
+ * com.example.SomeClass#someMethod
+ * com.example.SomeClass#someMethod(ILjava/lang/String;)V
+ * com.example.SomeClass#render* gpu
+ * </pre>
+ * The owner is matched exactly against the deobfuscated class name. The method name may use {@code *} wildcards, and
+ * without a descriptor all overloads match. {@code gpu} additionally times the method on the GPU when it runs on the
+ * render thread.
+ */
+public final class InstrumentationConfig {
+    private static final String GPU_FLAG = "gpu";
+
+    private final Map<String, List<Target>> targets;
+
+    private InstrumentationConfig(Map<String, List<Target>> targets) {
+        this.targets = targets;
+    }
+
+    public static InstrumentationConfig empty() {
+        return new InstrumentationConfig(Collections.emptyMap());
+    }
+
+    public static InstrumentationConfig load(@NotNull Path file) {
+        if (!Files.isRegularFile(file)) {
+            return empty();
+        }
+        final List<String> lines;
+        try {
+            lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            Share.log.error("Failed to read instrumentation config " + file, e);
+            return empty();
+        }
+
+        val targets = new Object2ObjectOpenHashMap<String, List<Target>>();
+        var count = 0;
+        for (var i = 0; i < lines.size(); i++) {
+            val line = lines.get(i).trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            val target = parse(line);
+            if (target == null) {
+                Share.log.warn("Ignoring malformed instrumentation entry at {}:{}: {}", file, i + 1, line);
+                continue;
+            }
+            targets.computeIfAbsent(target.owner, k -> new ObjectArrayList<>()).add(target);
+            count++;
+        }
+        Share.log.info("Loaded {} instrumentation entries for {} classes from {}", count, targets.size(), file);
+        return new InstrumentationConfig(targets);
+    }
+
+    /**
+     * @return The entries for a class, or null if it has none.
+     */
+    @Nullable
+    public List<Target> targets(@NotNull String owner) {
+        return targets.get(owner);
+    }
+
+    @Nullable
+    public static Target match(@Nullable List<Target> targets, @NotNull String name, @NotNull String desc) {
+        if (targets == null) {
+            return null;
+        }
+        for (val target : targets) {
+            if (target.matches(name, desc)) {
+                return target;
+            }
+        }
+        return null;
+    }
+
+    @Nullable
+    private static Target parse(String line) {
+        val parts = line.split("\\s+");
+        if (parts.length > 2 || (parts.length == 2 && !GPU_FLAG.equals(parts[1]))) {
+            return null;
+        }
+        val gpu = parts.length == 2;
+
+        val method = parts[0];
+        val hash = method.indexOf('#');
+        if (hash <= 0 || hash == method.length() - 1) {
+            return null;
+        }
+        val owner = method.substring(0, hash).replace('/', '.');
+        val paren = method.indexOf('(', hash);
+        val name = paren < 0 ? method.substring(hash + 1) : method.substring(hash + 1, paren);
+        val desc = paren < 0 ? null : method.substring(paren);
+        if (name.isEmpty()) {
+            return null;
+        }
+        return new Target(owner, name, desc, gpu);
+    }
+
+    public static final class Target {
+        final String owner;
+        @Nullable
+        final Pattern namePattern;
+        final String name;
+        @Nullable
+        final String desc;
+        final boolean gpu;
+
+        Target(String owner, String name, @Nullable String desc, boolean gpu) {
+            this.owner = owner;
+            this.name = name;
+            this.namePattern = name.indexOf('*') < 0 ? null : Pattern.compile(NamePatterns.globToRegex(name));
+            this.desc = desc;
+            this.gpu = gpu;
+        }
+
+        boolean matches(String name, String desc) {
+            if (this.desc != null && !this.desc.equals(desc)) {
+                return false;
+            }
+            return namePattern == null ? this.name.equals(name) : namePattern.matcher(name).matches();
+        }
+    }
+}
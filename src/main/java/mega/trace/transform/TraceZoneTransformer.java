@@ -0,0 +1,307 @@
+/*
+ * This file is part of MEGATrace.
+ *
+ * Copyright (C) 2024-2025 The MEGA Team
+ * All Rights Reserved
+ *
+ * The above copyright notice, this permission notice and the word "MEGA"
+ * shall be included in all copies or substantial portions of the Software.
+ *
+ * MEGATrace is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, only version 3 of the License.
+ *
+ * MEGATrace is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with MEGATrace.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package mega.trace.transform;
+
+import lombok.val;
+import mega.trace.Config;
+import mega.trace.Share;
+import mega.trace.common.TraceZones;
+import net.minecraft.launchwrapper.IClassTransformer;
+import net.minecraft.launchwrapper.Launch;
+import org.objectweb.asm.AnnotationVisitor;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.FrameNode;
+import org.objectweb.asm.tree.InsnList;
+import org.objectweb.asm.tree.InsnNode;
+import org.objectweb.asm.tree.IntInsnNode;
+import org.objectweb.asm.tree.LabelNode;
+import org.objectweb.asm.tree.LdcInsnNode;
+import org.objectweb.asm.tree.MethodInsnNode;
+import org.objectweb.asm.tree.MethodNode;
+import org.objectweb.asm.tree.TryCatchBlockNode;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Wraps methods annotated with {@link mega.trace.service.TraceZone} or listed in the {@link InstrumentationConfig} in
+ * {@link TraceZones#begin(int)} and {@link TraceZones#end()}, with a catch-all handler so the zone is closed when an
+ * exception escapes. The handler covers the body up to each return, but not the {@code end()} injected before it.
+ * <p>
+ * The annotation is matched by descriptor, and classes that neither mention it nor have config entries are returned
+ * untouched without parsing.
+ */
+public final class TraceZoneTransformer implements IClassTransformer {
+    private static final String ANNOTATION_DESC = "Lmega/trace/service/TraceZone;";
+    private static final byte[] ANNOTATION_DESC_BYTES = ANNOTATION_DESC.getBytes(StandardCharsets.UTF_8);
+    private static final String ZONES_OWNER = Type.getInternalName(TraceZones.class);
+
+    private final InstrumentationConfig config;
+
+    public TraceZoneTransformer() {
+        val file = Launch.minecraftHome.toPath().resolve(Config.INSTRUMENT_FILE);
+        config = InstrumentationConfig.load(file);
+    }
+
+    @Override
+    public byte[] transform(String name, String transformedName, byte[] basicClass) {
+        if (basicClass == null) {
+            return null;
+        }
+        val targets = config.targets(transformedName);
+        if (targets == null && !contains(basicClass, ANNOTATION_DESC_BYTES)) {
+            return basicClass;
+        }
+        try {
+            val reader = new ClassReader(basicClass);
+            // Frames are inserted by hand, computing them would need to load classes mid-transform
+            val writer = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+            val visitor = new TracedClassVisitor(writer, targets);
+            reader.accept(visitor, 0);
+            return visitor.traced ? writer.toByteArray() : basicClass;
+        } catch (Exception e) {
+            Share.log.error("Failed to instrument trace zones in " + transformedName, e);
+            return basicClass;
+        }
+    }
+
+    private static boolean isInitializer(String name) {
+        return name.equals("<init>") || name.equals("<clinit>");
+    }
+
+    static boolean contains(byte[] haystack, byte[] needle) {
+        outer:
+        for (int i = 0, end = haystack.length - needle.length; i <= end; i++) {
+            for (var j = 0; j < needle.length; j++) {
+                if (haystack[i + j] != needle[j]) {
+                    continue outer;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    private static final class TracedClassVisitor extends ClassVisitor {
+        final List<InstrumentationConfig.Target> targets;
+        String owner;
+        String simpleName;
+        boolean hasFrames;
+        boolean traced;
+
+        TracedClassVisitor(ClassVisitor cv, List<InstrumentationConfig.Target> targets) {
+            super(Opcodes.ASM5, cv);
+            this.targets = targets;
+        }
+
+        @Override
+        public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
+            owner = name;
+            simpleName = name.substring(name.lastIndexOf('/') + 1);
+            // Stack map frames are mandatory from Java 7, Java 6 class files fall back to the inference verifier
+            hasFrames = (version & 0xFFFF) >= Opcodes.V1_7;
+            super.visit(version, access, name, signature, superName, interfaces);
+        }
+
+        @Override
+        public MethodVisitor visitMethod(int access, String name, String desc, String signature, String[] exceptions) {
+            val mv = super.visitMethod(access, name, desc, signature, exceptions);
+            val mtv = new TracedMethodNode(this, mv, access, name, desc, signature, exceptions);
+            // Matched as named in the bytecode, which outside of development is the SRG name for vanilla methods
+            val target = InstrumentationConfig.match(targets, name, desc);
+            if (target != null && !isInitializer(name)) {
+                mtv.traced = true;
+                mtv.gpu = target.gpu;
+            }
+            return mtv;
+        }
+    }
+
+    private static final class TracedMethodNode extends MethodNode {
+        final TracedClassVisitor cv;
+        final MethodVisitor next;
+
+        boolean traced;
+        boolean gpu;
+        String zoneName;
+        int zoneColor;
+        LabelNode handler;
+
+        TracedMethodNode(TracedClassVisitor cv, MethodVisitor next, int access, String name, String desc,
+                         String signature, String[] exceptions) {
+            super(Opcodes.ASM5, access, name, desc, signature, exceptions);
+            this.cv = cv;
+            this.next = next;
+            this.zoneName = cv.simpleName + "." + name;
+        }
+
+        @Override
+        public AnnotationVisitor visitAnnotation(String desc, boolean visible) {
+            val av = super.visitAnnotation(desc, visible);
+            if (!ANNOTATION_DESC.equals(desc)) {
+                return av;
+            }
+            if (isInitializer(name)) {
+                Share.log.warn("Ignoring @TraceZone on {}.{}, constructors and static initializers are not traced",
+                               cv.owner, name);
+                return av;
+            }
+            traced = true;
+            return new AnnotationVisitor(Opcodes.ASM5, av) {
+                @Override
+                public void visit(String key, Object value) {
+                    if ("value".equals(key) && !((String) value).isEmpty()) {
+                        zoneName = (String) value;
+                    } else if ("color".equals(key)) {
+                        zoneColor = (Integer) value;
+                    }
+                    super.visit(key, value);
+                }
+            };
+        }
+
+        @Override
+        public void visitEnd() {
+            super.visitEnd();
+            // Abstract and native methods have no body to wrap
+            if (traced && instructions.size() > 0) {
+                cv.traced = true;
+                instrument();
+            }
+            accept(next);
+        }
+
+        /**
+         * The body is buffered so the handler ranges can stop short of the {@code end()} injected before each return,
+         * otherwise an exception thrown by it would end the zone a second time. The ranges are appended after the
+         * existing try-catch blocks, so handlers already in the method take precedence over them.
+         */
+        private void instrument() {
+            val head = new InsnList();
+            head.add(pushInt(TraceZones.register(zoneName, zoneColor)));
+            head.add(zoneCall(gpu ? "beginGpu" : "begin", "(I)V"));
+            var start = new LabelNode();
+            head.add(start);
+            instructions.insert(head);
+
+            for (AbstractInsnNode insn = start; insn != null; insn = insn.getNext()) {
+                val opcode = insn.getOpcode();
+                if (opcode < Opcodes.IRETURN || opcode > Opcodes.RETURN) {
+                    continue;
+                }
+                val end = new LabelNode();
+                instructions.insertBefore(insn, end);
+                instructions.insertBefore(insn, endZone());
+                protect(start, end);
+                start = new LabelNode();
+                instructions.insert(insn, start);
+                insn = start;
+            }
+
+            val end = new LabelNode();
+            instructions.add(end);
+            protect(start, end);
+            if (handler == null) {
+                return;
+            }
+            instructions.add(handler);
+            if (cv.hasFrames) {
+                val locals = argumentFrame();
+                instructions.add(new FrameNode(Opcodes.F_FULL, locals.length, locals, 1,
+                                               new Object[]{"java/lang/Throwable"}));
+            }
+            instructions.add(endZone());
+            instructions.add(new InsnNode(Opcodes.ATHROW));
+        }
+
+        /**
+         * Empty ranges are invalid in the exception table, so a range is only added when it holds an instruction.
+         */
+        private void protect(LabelNode start, LabelNode end) {
+            for (var insn = start.getNext(); insn != end; insn = insn.getNext()) {
+                if (insn.getOpcode() >= 0) {
+                    if (handler == null) {
+                        handler = new LabelNode();
+                    }
+                    tryCatchBlocks.add(new TryCatchBlockNode(start, end, handler, null));
+                    return;
+                }
+            }
+        }
+
+        private MethodInsnNode endZone() {
+            return zoneCall(gpu ? "endGpu" : "end", "()V");
+        }
+
+        private static MethodInsnNode zoneCall(String name, String desc) {
+            return new MethodInsnNode(Opcodes.INVOKESTATIC, ZONES_OWNER, name, desc, false);
+        }
+
+        private static AbstractInsnNode pushInt(int value) {
+            return value <= Short.MAX_VALUE ? new IntInsnNode(Opcodes.SIPUSH, value) : new LdcInsnNode(value);
+        }
+
+        /**
+         * The handler covers most of the body, so only the arguments are known to hold their declared types there.
+         */
+        private Object[] argumentFrame() {
+            val args = Type.getArgumentTypes(desc);
+            val isStatic = (access & Opcodes.ACC_STATIC) != 0;
+            val locals = new Object[args.length + (isStatic ? 0 : 1)];
+            var i = 0;
+            if (!isStatic) {
+                locals[i++] = cv.owner;
+            }
+            for (val arg : args) {
+                locals[i++] = frameType(arg);
+            }
+            return locals;
+        }
+
+        private static Object frameType(Type type) {
+            switch (type.getSort()) {
+                case Type.BOOLEAN:
+                case Type.CHAR:
+                case Type.BYTE:
+                case Type.SHORT:
+                case Type.INT:
+                    return Opcodes.INTEGER;
+                case Type.FLOAT:
+                    return Opcodes.FLOAT;
+                case Type.LONG:
+                    return Opcodes.LONG;
+                case Type.DOUBLE:
+                    return Opcodes.DOUBLE;
+                default:
+                    // Internal name for objects, descriptor for arrays
+                    return type.getInternalName();
+            }
+        }
+    }
+}
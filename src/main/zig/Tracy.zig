@@ -27,6 +27,9 @@ const StringUtil = @import("StringUtil.zig");
 const intern_pool = @import("intern_pool.zig");
 
 const default_gpu_context = 0;
+/// GC pauses are reported after the fact, and only GPU zones can be given past timestamps.
+const gc_gpu_context = 1;
+const gc_context_name = "GC";
 const default_file = "Frame";
 const default_function = "Frame";
 const default_line = 0;
@@ -35,13 +38,83 @@ const cpu_zone_error = -1;
 
 const gpu_zone_error = 0;
 
-var arena_alloc: std.heap.ArenaAllocator = undefined;
-var alloc: std.mem.Allocator = undefined;
+const zone_id_error = -1;
+
+const max_registered_zones = 1 << 16;
+
+const plot_id_error = -1;
+
+const max_registered_plots = 1024;
+
+const memory_pool_id_error = -1;
+
+const max_registered_memory_pools = 64;
+
+/// Messages past this many distinct strings are sent without being interned, so per-entity or per-coordinate
+/// messages can't grow the pool for the lifetime of the process.
+const max_interned_messages = 4096;
+
+/// Messages that are not interned are null-terminated in a stack buffer if they fit, or on the heap otherwise.
+const message_buffer_size = 1024;
+
+var message_pool_full_warned = std.atomic.Value(bool).init(false);
 
 var name_intern_pool: intern_pool.StringInternPool = undefined;
 var message_intern_pool: intern_pool.StringInternPool = undefined;
 var source_location_pool: SourceLocationInternPool = undefined;
 var gpu_query_id_counter =  std.atomic.Value(u16).init(0);
+var gc_query_id_counter = std.atomic.Value(u16).init(0);
+
+/// Zones registered through `registerZone`, indexed by the id handed back to Java.
+/// Entries are only ever appended, so readers only need to check the id against `zone_registry_count`.
+var zone_registry: [max_registered_zones]*const tracy.TracySourceLocationData = undefined;
+var zone_registry_count = std.atomic.Value(u32).init(0);
+var zone_registry_ids: std.AutoHashMapUnmanaged(*const tracy.TracySourceLocationData, u32) = .{};
+var zone_registry_mutex: std.Thread.Mutex = .{};
+
+/// Plots registered through `registerPlot`, and named memory pools through `registerMemoryPool`.
+/// Tracy keys both by the name pointer, so names must be interned.
+var plot_registry: NameRegistry(max_registered_plots) = .{};
+var memory_pool_registry: NameRegistry(max_registered_memory_pools) = .{};
+
+/// Interned names indexed by the id handed back to Java. Entries are only ever appended, so readers only need to
+/// check the id against `count`.
+fn NameRegistry(comptime capacity: usize) type {
+    return struct {
+        names: [capacity][*:0]const u8 = undefined,
+        count: std.atomic.Value(u32) = std.atomic.Value(u32).init(0),
+        mutex: std.Thread.Mutex = .{},
+
+        /// Registering the same name twice yields the same id.
+        fn register(self: *@This(), name: [:0]const u8) !u32 {
+            const interned_name = try name_intern_pool.intern(name, name);
+
+            self.mutex.lock();
+            defer self.mutex.unlock();
+            const used = self.count.load(.monotonic);
+            for (self.names[0..used], 0..) |registered_name, id| {
+                if (registered_name == interned_name.ptr) {
+                    return @intCast(id);
+                }
+            }
+            if (used >= capacity) {
+                return error.RegistryFull;
+            }
+            self.names[used] = interned_name.ptr;
+            self.count.store(used + 1, .release);
+            return used;
+        }
+
+        inline fn get(self: *@This(), jId: jni.jint) ?[*:0]const u8 {
+            if (jId < 0)
+                return null;
+            const id: u32 = @bitCast(jId);
+            if (id >= self.count.load(.acquire))
+                return null;
+            return self.names[id];
+        }
+    };
+}
 
 const SourceLocationKey = struct {
     name: [:0]const u8,
@@ -83,19 +156,17 @@ const GPUTracyLocationData = struct {
 
 pub fn jni_init(_: *jni.cEnv, _: jni.jclass) callconv(.c) void {
     tracy.startupProfiler();
-    arena_alloc = std.heap.ArenaAllocator.init(std.heap.c_allocator);
-    alloc = arena_alloc.allocator();
-    message_intern_pool = intern_pool.StringInternPool.init(alloc);
-    name_intern_pool = intern_pool.StringInternPool.init(alloc);
-    source_location_pool = SourceLocationInternPool.init(alloc);
+    message_intern_pool = intern_pool.StringInternPool.init(std.heap.c_allocator);
+    name_intern_pool = intern_pool.StringInternPool.init(std.heap.c_allocator);
+    source_location_pool = SourceLocationInternPool.init(std.heap.c_allocator);
 }
 
 pub fn jni_deinit(_: *jni.cEnv, _: jni.jclass) callconv(.c) void {
     tracy.shutdownProfiler();
+    zone_registry_ids.deinit(std.heap.c_allocator);
     source_location_pool.deinit();
     name_intern_pool.deinit();
     message_intern_pool.deinit();
-    arena_alloc.deinit();
 }
 
 pub fn jni_frameMark(_: *jni.cEnv, _: jni.jclass) callconv(.c) void {
@@ -106,6 +177,18 @@ pub fn critical_frameMark() callconv(.c) void {
     tracy.frameMark();
 }
 
+/// Whether a viewer is currently connected. Only polled when the library was built with `tracy_on_demand`, as only
+/// then is what gets recorded without a viewer dropped.
+pub fn jni_isConnected(_: *jni.cEnv, _: jni.jclass) callconv(.c) jni.jboolean {
+    return @intFromBool(___tracy_connected() != 0);
+}
+
+pub fn critical_isConnected() callconv(.c) jni.jboolean {
+    return @intFromBool(___tracy_connected() != 0);
+}
+
+extern fn ___tracy_connected() i32;
+
 pub fn jni_beginZone(cEnv: *jni.cEnv, _: jni.jclass, jName: jni.jbyteArray, jColor: jni.jint) callconv(.c) jni.jlong {
     const env = jni.JNIEnv.warp(cEnv);
     const name = getByteArray(env, jName) orelse return cpu_zone_error;
@@ -126,17 +209,12 @@ pub fn jni_message(cEnv: *jni.cEnv, _: jni.jclass, jMsg: jni.jbyteArray) callcon
     const env = jni.JNIEnv.warp(cEnv);
     const msg = getByteArray(env, jMsg) orelse return;
     defer freeByteArray(env, jMsg, msg);
-    message(msg) catch {};
+    message(msg, null);
 }
 
 pub fn critical_message(jMsgL: jni.jint, jMsg: [*c]jni.jbyte) callconv(.c) void {
     const msg = critical_getByteArray(jMsgL, jMsg) orelse return;
-    message(msg) catch {};
-}
-
-fn message(msg: [:0]const u8) !void {
-    const interned_msg = try message_intern_pool.intern(msg, msg);
-    tracy.messageAlloc(interned_msg);
+    message(msg, null);
 }
 
 
@@ -145,34 +223,138 @@ pub fn jni_messageColor(cEnv: *jni.cEnv, _: jni.jclass, jMsg: jni.jbyteArray, jC
     const msg = getByteArray(env, jMsg) orelse return;
     defer freeByteArray(env, jMsg, msg);
     const color: u32 = @bitCast(jColor);
-    messageColor(msg, color) catch {};
+    message(msg, color);
 }
 
 pub fn critical_messageColor(jMsgL: jni.jint, jMsg: [*c]jni.jbyte, jColor: jni.jint) callconv(.c) void {
     const msg = critical_getByteArray(jMsgL, jMsg) orelse return;
     const color: u32 = @bitCast(jColor);
-    messageColor(msg, color) catch {};
+    message(msg, color);
+}
+
+fn message(msg: [:0]const u8, color: ?u32) void {
+    var buffer: [message_buffer_size]u8 = undefined;
+    var heap_msg: ?[:0]const u8 = null;
+    defer if (heap_msg) |m| std.heap.c_allocator.free(m);
+
+    const terminated_msg: [:0]const u8 = if (internMessage(msg)) |interned_msg|
+        interned_msg
+    else if (msg.len < buffer.len) blk: {
+        @memcpy(buffer[0..msg.len], msg);
+        buffer[msg.len] = 0;
+        break :blk buffer[0..msg.len :0];
+    } else blk: {
+        heap_msg = StringUtil.cloneString(msg, std.heap.c_allocator) catch return;
+        break :blk heap_msg.?;
+    };
+
+    if (color) |c| {
+        tracy.messageColorAlloc(terminated_msg, c);
+    } else {
+        tracy.messageAlloc(terminated_msg);
+    }
+}
+
+fn internMessage(msg: [:0]const u8) ?[:0]const u8 {
+    if (message_intern_pool.lookup(msg)) |interned_msg| {
+        return interned_msg;
+    }
+    if (message_intern_pool.count() >= max_interned_messages) {
+        if (!message_pool_full_warned.swap(true, .monotonic)) {
+            std.log.warn("Message intern pool reached its cap of {d} distinct messages, further ones are copied each time", .{max_interned_messages});
+        }
+        return null;
+    }
+    return message_intern_pool.intern(msg, msg) catch null;
+}
+
+pub fn jni_messagePoolSize(_: *jni.cEnv, _: jni.jclass) callconv(.c) jni.jlong {
+    return @intCast(message_intern_pool.count());
 }
 
-fn messageColor(msg: [:0]const u8, color: u32) !void {
-    const interned_msg = try message_intern_pool.intern(msg, msg);
-    tracy.messageColorAlloc(interned_msg, color);
+pub fn critical_messagePoolSize() callconv(.c) jni.jlong {
+    return @intCast(message_intern_pool.count());
 }
 
 fn beginZone(name: [:0]const u8, color: u32) !u64 {
     const interned_name = try name_intern_pool.intern(name, name);
+    const source = try internSourceLocation(interned_name, color);
+    const context = tracy.initZoneRaw(source, true);
+    return @bitCast(context);
+}
+
+fn internSourceLocation(interned_name: [:0]const u8, color: u32) !*const tracy.TracySourceLocationData {
     const key = SourceLocationKey{
         .name = interned_name,
         .color = color
     };
-    const source = try source_location_pool.intern(key, &tracy.TracySourceLocationData{
+    return source_location_pool.intern(key, &tracy.TracySourceLocationData{
         .name = interned_name,
         .function = default_function,
         .file = default_file,
         .line = default_line,
         .color = color,
     });
-    const context = tracy.initZoneRaw(source, true);
+}
+
+pub fn jni_registerZone(cEnv: *jni.cEnv, _: jni.jclass, jName: jni.jbyteArray, jColor: jni.jint) callconv(.c) jni.jint {
+    const env = jni.JNIEnv.warp(cEnv);
+    const name = getByteArray(env, jName) orelse return zone_id_error;
+    defer freeByteArray(env, jName, name);
+    const color: u32 = @bitCast(jColor);
+    const id = registerZone(name, color) catch return zone_id_error;
+    return @bitCast(id);
+}
+
+pub fn critical_registerZone(jNameL: jni.jint, jName: [*c]jni.jbyte, jColor: jni.jint) callconv(.c) jni.jint {
+    const name = critical_getByteArray(jNameL, jName) orelse return zone_id_error;
+    const color: u32 = @bitCast(jColor);
+    const id = registerZone(name, color) catch return zone_id_error;
+    return @bitCast(id);
+}
+
+/// Registering the same name and color twice yields the same id.
+fn registerZone(name: [:0]const u8, color: u32) !u32 {
+    const interned_name = try name_intern_pool.intern(name, name);
+    const source = try internSourceLocation(interned_name, color);
+
+    zone_registry_mutex.lock();
+    defer zone_registry_mutex.unlock();
+    const result = try zone_registry_ids.getOrPut(std.heap.c_allocator, source);
+    if (result.found_existing) {
+        return result.value_ptr.*;
+    }
+    const id = zone_registry_count.load(.monotonic);
+    if (id >= max_registered_zones) {
+        _ = zone_registry_ids.remove(source);
+        return error.ZoneRegistryFull;
+    }
+    zone_registry[id] = source;
+    result.value_ptr.* = id;
+    zone_registry_count.store(id + 1, .release);
+    return id;
+}
+
+inline fn registeredZone(jId: jni.jint) ?*const tracy.TracySourceLocationData {
+    if (jId < 0)
+        return null;
+    const id: u32 = @bitCast(jId);
+    if (id >= zone_registry_count.load(.acquire))
+        return null;
+    return zone_registry[id];
+}
+
+pub fn jni_beginZoneById(_: *jni.cEnv, _: jni.jclass, jId: jni.jint) callconv(.c) jni.jlong {
+    return beginZoneById(jId);
+}
+
+pub fn critical_beginZoneById(jId: jni.jint) callconv(.c) jni.jlong {
+    return beginZoneById(jId);
+}
+
+inline fn beginZoneById(jId: jni.jint) jni.jlong {
+    const source = registeredZone(jId) orelse return cpu_zone_error;
+    const context: u64 = @bitCast(tracy.initZoneRaw(source, true));
     return @bitCast(context);
 }
 
@@ -222,16 +404,50 @@ pub fn critical_gpuBeginZone(jNameL: jni.jint, jName: [*c]jni.jbyte, jColor: jni
 }
 
 fn gpuBeginZone(name: [:0]const u8, color: u32) !u16 {
+    const interned_name = try name_intern_pool.intern(name, name);
+    const source = try internSourceLocation(interned_name, color);
+    return gpuBeginZoneSource(source, default_gpu_context, &gpu_query_id_counter);
+}
+
+pub fn jni_gpuBeginZoneById(_: *jni.cEnv, _: jni.jclass, jId: jni.jint) callconv(.c) jni.jshort {
+    const source = registeredZone(jId) orelse return gpu_zone_error;
+    return @bitCast(gpuBeginZoneSource(source, default_gpu_context, &gpu_query_id_counter));
+}
+
+pub fn critical_gpuBeginZoneById(jId: jni.jint) callconv(.c) jni.jshort {
+    const source = registeredZone(jId) orelse return gpu_zone_error;
+    return @bitCast(gpuBeginZoneSource(source, default_gpu_context, &gpu_query_id_counter));
+}
+
+/// GPU zones share the interned source locations of CPU zones. `GPU.beginZone` only takes locations from
+/// `allocSrcLoc`, which allocates and serializes one per zone, so this goes through the non-allocating C entry point.
+fn gpuBeginZoneSource(source: *const tracy.TracySourceLocationData, context: u8, counter: *std.atomic.Value(u16)) u16 {
+    const query_id = nextQueryId(counter);
+    ___tracy_emit_gpu_zone_begin(.{
+        .srcloc = @intFromPtr(source),
+        .query_id = query_id,
+        .context = context,
+    });
+    return query_id;
+}
+
+/// Skips `gpu_zone_error` when the counter wraps around.
+fn nextQueryId(counter: *std.atomic.Value(u16)) u16 {
     var query_id: u16 = gpu_zone_error;
     while (query_id == gpu_zone_error) {
-        query_id = gpu_query_id_counter.fetchAdd(1, .monotonic);
+        query_id = counter.fetchAdd(1, .monotonic);
     }
-    const interned_name = try name_intern_pool.intern(name, name);
-    const gpu_loc = tracy.allocSrcLoc(default_line, default_file, default_function, interned_name, color);
-    GPU.beginZone(gpu_loc, query_id, default_gpu_context);
     return query_id;
 }
 
+const TracyGpuZoneBeginData = extern struct {
+    srcloc: u64,
+    query_id: u16,
+    context: u8,
+};
+
+extern fn ___tracy_emit_gpu_zone_begin(data: TracyGpuZoneBeginData) void;
+
 pub fn jni_gpuEndZone(_: *jni.cEnv, _: jni.jclass) callconv(.c) jni.jshort {
     return @bitCast(gpuEndZone());
 }
@@ -241,10 +457,7 @@ pub fn critical_gpuEndZone() callconv(.c) jni.jshort {
 }
 
 fn gpuEndZone() u16 {
-    var query_id: u16 = gpu_zone_error;
-    while (query_id == gpu_zone_error) {
-        query_id = gpu_query_id_counter.fetchAdd(1, .monotonic);
-    }
+    const query_id = nextQueryId(&gpu_query_id_counter);
     GPU.endZone(query_id, default_gpu_context);
     return query_id;
 }
@@ -257,6 +470,216 @@ pub fn critical_gpuTime(query_id: jni.jshort, gpu_time: jni.jlong) callconv(.c)
     GPU.time(@bitCast(gpu_time), @bitCast(query_id), default_gpu_context);
 }
 
+pub fn jni_gpuTimeBatch(cEnv: *jni.cEnv, _: jni.jclass, jTimes: jni.jlongArray, jCount: jni.jint) callconv(.c) void {
+    if (jTimes == null)
+        return;
+    const env = jni.JNIEnv.warp(cEnv);
+    var isCopy: bool = undefined;
+    const length: u32 = @bitCast(env.getArrayLength(jTimes));
+    const times = env.getPrimitiveArrayElements(jni.jlong, jTimes, &isCopy);
+    defer env.releasePrimitiveArrayElements(jni.jlong, jTimes, times, .JNIDefault);
+    gpuTimeBatch(times[0..length], jCount);
+}
+
+pub fn critical_gpuTimeBatch(jTimesL: jni.jint, jTimes: [*c]jni.jlong, jCount: jni.jint) callconv(.c) void {
+    if (jTimes == null)
+        return;
+    const length: u32 = @bitCast(jTimesL);
+    gpuTimeBatch(jTimes[0..length], jCount);
+}
+
+/// `times` holds `count` pairs of query id and GPU timestamp.
+fn gpuTimeBatch(times: []const jni.jlong, jCount: jni.jint) void {
+    const count = @min(@as(usize, @intCast(@max(jCount, 0))), times.len / 2);
+    for (0..count) |i| {
+        const query_id: jni.jshort = @truncate(times[i * 2]);
+        const gpu_time = times[i * 2 + 1];
+        GPU.time(@bitCast(gpu_time), @bitCast(query_id), default_gpu_context);
+    }
+}
+
+/// `gcTime` is the current time on the clock later passed to `gcPause`, in nanoseconds.
+pub fn jni_gcInit(_: *jni.cEnv, _: jni.jclass, gcTime: jni.jlong) callconv(.c) void {
+    GPU.newContext(gcTime, 1.0, gc_gpu_context, &.{}, GPU.ContextType.OpenGl);
+    ___tracy_emit_gpu_context_name(.{
+        .context = gc_gpu_context,
+        .name = gc_context_name,
+        .len = gc_context_name.len,
+    });
+}
+
+pub fn jni_gcPause(_: *jni.cEnv, _: jni.jclass, jId: jni.jint, start: jni.jlong, end: jni.jlong) callconv(.c) void {
+    gcPause(jId, start, end);
+}
+
+pub fn critical_gcPause(jId: jni.jint, start: jni.jlong, end: jni.jlong) callconv(.c) void {
+    gcPause(jId, start, end);
+}
+
+/// Emits a complete zone on the GC context, with both timestamps known up front.
+fn gcPause(jId: jni.jint, start: jni.jlong, end: jni.jlong) void {
+    const source = registeredZone(jId) orelse return;
+    const begin_query_id = gpuBeginZoneSource(source, gc_gpu_context, &gc_query_id_counter);
+    const end_query_id = nextQueryId(&gc_query_id_counter);
+    GPU.endZone(end_query_id, gc_gpu_context);
+    GPU.time(@bitCast(start), begin_query_id, gc_gpu_context);
+    GPU.time(@bitCast(end), end_query_id, gc_gpu_context);
+}
+
+const TracyGpuContextNameData = extern struct {
+    context: u8,
+    name: [*]const u8,
+    len: u16,
+};
+
+extern fn ___tracy_emit_gpu_context_name(data: TracyGpuContextNameData) void;
+
+pub fn jni_setThreadName(cEnv: *jni.cEnv, _: jni.jclass, jName: jni.jbyteArray) callconv(.c) void {
+    const env = jni.JNIEnv.warp(cEnv);
+    const name = getByteArray(env, jName) orelse return;
+    defer freeByteArray(env, jName, name);
+    setThreadName(name) catch {};
+}
+
+pub fn critical_setThreadName(jNameL: jni.jint, jName: [*c]jni.jbyte) callconv(.c) void {
+    const name = critical_getByteArray(jNameL, jName) orelse return;
+    setThreadName(name) catch {};
+}
+
+fn setThreadName(name: [:0]const u8) !void {
+    // Interned for the null terminator, Java arrays don't have one
+    const interned_name = try name_intern_pool.intern(name, name);
+    ___tracy_set_thread_name(interned_name.ptr);
+}
+
+extern fn ___tracy_set_thread_name(name: [*:0]const u8) void;
+
+pub fn jni_registerPlot(cEnv: *jni.cEnv, _: jni.jclass, jName: jni.jbyteArray) callconv(.c) jni.jint {
+    const env = jni.JNIEnv.warp(cEnv);
+    const name = getByteArray(env, jName) orelse return plot_id_error;
+    defer freeByteArray(env, jName, name);
+    const id = registerPlot(name) catch return plot_id_error;
+    return @bitCast(id);
+}
+
+pub fn critical_registerPlot(jNameL: jni.jint, jName: [*c]jni.jbyte) callconv(.c) jni.jint {
+    const name = critical_getByteArray(jNameL, jName) orelse return plot_id_error;
+    const id = registerPlot(name) catch return plot_id_error;
+    return @bitCast(id);
+}
+
+fn registerPlot(name: [:0]const u8) !u32 {
+    return plot_registry.register(name);
+}
+
+inline fn registeredPlot(jId: jni.jint) ?[*:0]const u8 {
+    return plot_registry.get(jId);
+}
+
+pub fn jni_plot(_: *jni.cEnv, _: jni.jclass, jId: jni.jint, value: jni.jdouble) callconv(.c) void {
+    const name = registeredPlot(jId) orelse return;
+    ___tracy_emit_plot(name, value);
+}
+
+pub fn critical_plot(jId: jni.jint, value: jni.jdouble) callconv(.c) void {
+    const name = registeredPlot(jId) orelse return;
+    ___tracy_emit_plot(name, value);
+}
+
+extern fn ___tracy_emit_plot(name: [*:0]const u8, value: f64) void;
+
+/// `format` is 0 for plain numbers, 1 for memory sizes in bytes and 2 for percentages.
+pub fn jni_plotConfig(_: *jni.cEnv, _: jni.jclass, jId: jni.jint, jFormat: jni.jint, jStep: jni.jboolean, jFill: jni.jboolean, jColor: jni.jint) callconv(.c) void {
+    const name = registeredPlot(jId) orelse return;
+    ___tracy_emit_plot_config(name, jFormat, @intFromBool(jStep != 0), @intFromBool(jFill != 0), @bitCast(jColor));
+}
+
+pub fn critical_plotConfig(jId: jni.jint, jFormat: jni.jint, jStep: jni.jboolean, jFill: jni.jboolean, jColor: jni.jint) callconv(.c) void {
+    const name = registeredPlot(jId) orelse return;
+    ___tracy_emit_plot_config(name, jFormat, @intFromBool(jStep != 0), @intFromBool(jFill != 0), @bitCast(jColor));
+}
+
+extern fn ___tracy_emit_plot_config(name: [*:0]const u8, format: i32, step: i32, fill: i32, color: u32) void;
+
+pub fn jni_registerMemoryPool(cEnv: *jni.cEnv, _: jni.jclass, jName: jni.jbyteArray) callconv(.c) jni.jint {
+    const env = jni.JNIEnv.warp(cEnv);
+    const name = getByteArray(env, jName) orelse return memory_pool_id_error;
+    defer freeByteArray(env, jName, name);
+    const id = memory_pool_registry.register(name) catch return memory_pool_id_error;
+    return @bitCast(id);
+}
+
+pub fn critical_registerMemoryPool(jNameL: jni.jint, jName: [*c]jni.jbyte) callconv(.c) jni.jint {
+    const name = critical_getByteArray(jNameL, jName) orelse return memory_pool_id_error;
+    const id = memory_pool_registry.register(name) catch return memory_pool_id_error;
+    return @bitCast(id);
+}
+
+/// `address` only has to be unique within the pool, so GL object names work as well as pointers.
+pub fn jni_memAlloc(_: *jni.cEnv, _: jni.jclass, jPool: jni.jint, address: jni.jlong, size: jni.jlong) callconv(.c) void {
+    memAlloc(jPool, address, size);
+}
+
+pub fn critical_memAlloc(jPool: jni.jint, address: jni.jlong, size: jni.jlong) callconv(.c) void {
+    memAlloc(jPool, address, size);
+}
+
+fn memAlloc(jPool: jni.jint, address: jni.jlong, size: jni.jlong) void {
+    const name = memory_pool_registry.get(jPool) orelse return;
+    if (size < 0)
+        return;
+    ___tracy_emit_memory_alloc_named(@ptrFromInt(@as(usize, @bitCast(address))), @intCast(size), 0, name);
+}
+
+pub fn jni_memFree(_: *jni.cEnv, _: jni.jclass, jPool: jni.jint, address: jni.jlong) callconv(.c) void {
+    memFree(jPool, address);
+}
+
+pub fn critical_memFree(jPool: jni.jint, address: jni.jlong) callconv(.c) void {
+    memFree(jPool, address);
+}
+
+fn memFree(jPool: jni.jint, address: jni.jlong) void {
+    const name = memory_pool_registry.get(jPool) orelse return;
+    ___tracy_emit_memory_free_named(@ptrFromInt(@as(usize, @bitCast(address))), 0, name);
+}
+
+pub fn jni_memBatch(cEnv: *jni.cEnv, _: jni.jclass, jEvents: jni.jlongArray, jCount: jni.jint) callconv(.c) void {
+    if (jEvents == null)
+        return;
+    const env = jni.JNIEnv.warp(cEnv);
+    var isCopy: bool = undefined;
+    const length: u32 = @bitCast(env.getArrayLength(jEvents));
+    const events = env.getPrimitiveArrayElements(jni.jlong, jEvents, &isCopy);
+    defer env.releasePrimitiveArrayElements(jni.jlong, jEvents, events, .JNIDefault);
+    memBatch(events[0..length], jCount);
+}
+
+pub fn critical_memBatch(jEventsL: jni.jint, jEvents: [*c]jni.jlong, jCount: jni.jint) callconv(.c) void {
+    if (jEvents == null)
+        return;
+    const length: u32 = @bitCast(jEventsL);
+    memBatch(jEvents[0..length], jCount);
+}
+
+/// `events` holds `count` triples of pool, address and size, where a negative size is a free.
+fn memBatch(events: []const jni.jlong, jCount: jni.jint) void {
+    const count = @min(@as(usize, @intCast(@max(jCount, 0))), events.len / 3);
+    for (0..count) |i| {
+        const pool: jni.jint = @truncate(events[i * 3]);
+        const address = events[i * 3 + 1];
+        const size = events[i * 3 + 2];
+        if (size < 0) {
+            memFree(pool, address);
+        } else {
+            memAlloc(pool, address, size);
+        }
+    }
+}
+
+extern fn ___tracy_emit_memory_alloc_named(ptr: ?*const anyopaque, size: usize, secure: i32, name: [*:0]const u8) void;
+extern fn ___tracy_emit_memory_free_named(ptr: ?*const anyopaque, secure: i32, name: [*:0]const u8) void;
+
 pub fn jni_frameImage(_: *jni.cEnv, _: jni.jclass, offset: jni.jbyte, image: jni.jlong, width: jni.jshort, height: jni.jshort) callconv(.c) void {
     tracy.frameImage(@ptrFromInt(@as(usize, @bitCast(image))), @bitCast(width), @bitCast(height), @bitCast(offset), true);
 }
@@ -5,39 +5,148 @@ const StringUtil = @import("StringUtil.zig");
 /// HashMapContext -- a context for std.HashMap
 /// fn cloneKey(key: K, allocator: std.mem.Allocator) !K
 /// fn cloneValue(sourceKey: K, clonedKey: K, value: V, allocator: std.mem.Allocator) !V
+///
+/// Lookups of keys that are already interned are lock-free: each shard publishes an open-addressed table of
+/// immutable entries, and tables are only ever replaced by larger copies, never modified in a way that removes
+/// an entry. Inserting takes the lock of the key's shard, so only first-time interning can contend.
 pub fn InternPool(comptime K: type, comptime V: type, comptime Context: type) type {
-    const HashMap = std.HashMap(K, V, Context.HashMapContext, std.hash_map.default_max_load_percentage);
     return struct {
         const This = @This();
 
-        mutex: std.Thread.Mutex = .{},
-        allocator: std.mem.Allocator,
-        pool: HashMap,
+        const shard_bits = 4;
+        const shard_count = 1 << shard_bits;
+        const initial_capacity = 64;
 
+        const ctx: Context.HashMapContext = .{};
+
+        const Entry = struct {
+            hash: u64,
+            key: K,
+            value: V,
+        };
+
+        const Slot = std.atomic.Value(?*const Entry);
+
+        const Table = struct {
+            // Length is always a power of two, and at most half of the slots are used.
+            slots: []Slot,
+
+            fn find(table: *const Table, hash: u64, key: K) ?V {
+                const mask = table.slots.len - 1;
+                var i = hash & mask;
+                while (table.slots[i].load(.acquire)) |entry| : (i = (i + 1) & mask) {
+                    if (entry.hash == hash and ctx.eql(entry.key, key)) {
+                        return entry.value;
+                    }
+                }
+                return null;
+            }
+
+            fn put(table: *Table, entry: *const Entry) void {
+                const mask = table.slots.len - 1;
+                var i = entry.hash & mask;
+                while (table.slots[i].raw != null) : (i = (i + 1) & mask) {}
+                table.slots[i].store(entry, .release);
+            }
+        };
+
+        const Shard = struct {
+            // Aligned so writers on one shard don't invalidate the cache line readers of another shard are using.
+            table: std.atomic.Value(?*Table) align(std.atomic.cache_line) = .init(null),
+            mutex: std.Thread.Mutex = .{},
+            arena: std.heap.ArenaAllocator,
+            count: std.atomic.Value(usize) = .init(0),
+
+            fn insert(shard: *Shard, hash: u64, key: K, value: V) !V {
+                const allocator = shard.arena.allocator();
+                var table = shard.table.load(.monotonic) orelse try allocTable(allocator, initial_capacity);
+                if (table.find(hash, key)) |found| {
+                    return found;
+                }
+                const used = shard.count.raw;
+                if ((used + 1) * 2 > table.slots.len) {
+                    table = try grow(allocator, table);
+                }
+
+                const newKey = try Context.cloneKey(key, allocator);
+                const newValue = try Context.cloneValue(key, newKey, value, allocator);
+                const entry = try allocator.create(Entry);
+                entry.* = .{
+                    .hash = hash,
+                    .key = newKey,
+                    .value = newValue,
+                };
+                table.put(entry);
+                shard.count.store(used + 1, .monotonic);
+                shard.table.store(table, .release);
+                return newValue;
+            }
+
+            fn allocTable(allocator: std.mem.Allocator, capacity: usize) !*Table {
+                const table = try allocator.create(Table);
+                table.slots = try allocator.alloc(Slot, capacity);
+                @memset(table.slots, .init(null));
+                return table;
+            }
+
+            /// The old table stays alive in the arena, as readers may still be probing it.
+            fn grow(allocator: std.mem.Allocator, old: *const Table) !*Table {
+                const table = try allocTable(allocator, old.slots.len * 2);
+                for (old.slots) |*slot| {
+                    if (slot.raw) |entry| {
+                        table.put(entry);
+                    }
+                }
+                return table;
+            }
+        };
+
+        shards: [shard_count]Shard,
+
+        /// `allocator` must be thread-safe, as each shard allocates from it independently.
         pub fn init(allocator: std.mem.Allocator) This {
-            return This {
-                .allocator = allocator,
-                .pool = HashMap.init(allocator)
-            };
+            var this: This = undefined;
+            for (&this.shards) |*shard| {
+                shard.* = .{ .arena = std.heap.ArenaAllocator.init(allocator) };
+            }
+            return this;
         }
 
         pub fn deinit(this: *This) void {
-            this.pool.deinit();
+            for (&this.shards) |*shard| {
+                shard.arena.deinit();
+            }
+        }
+
+        /// Number of interned keys. Only approximate while other threads are interning.
+        pub fn count(this: *const This) usize {
+            var total: usize = 0;
+            for (&this.shards) |*shard| {
+                total += shard.count.load(.monotonic);
+            }
+            return total;
+        }
+
+        /// Finds an already interned key without ever taking a lock.
+        pub fn lookup(this: *This, key: K) ?V {
+            const hash = ctx.hash(key);
+            return lookupHashed(&this.shards[hash >> (64 - shard_bits)], hash, key);
         }
 
         pub fn intern(this: *This, key: K, value: V) !V {
-            while (!this.mutex.tryLock()) {}
-            defer this.mutex.unlock();
-            const result = try this.pool.getOrPut(key);
-            if (!result.found_existing) {
-                const newKey = try Context.cloneKey(key, this.allocator);
-                const newValue = try Context.cloneValue(key, newKey, value, this.allocator);
-                result.key_ptr.* = newKey;
-                result.value_ptr.* = newValue;
-                return newValue;
-            } else {
-                return result.value_ptr.*;
+            const hash = ctx.hash(key);
+            const shard = &this.shards[hash >> (64 - shard_bits)];
+            if (lookupHashed(shard, hash, key)) |found| {
+                return found;
             }
+            shard.mutex.lock();
+            defer shard.mutex.unlock();
+            return shard.insert(hash, key, value);
+        }
+
+        inline fn lookupHashed(shard: *Shard, hash: u64, key: K) ?V {
+            const table = shard.table.load(.acquire) orelse return null;
+            return table.find(hash, key);
         }
     };
 }
@@ -61,4 +170,4 @@ const StringContext = struct {
     }
 };
 
-pub const StringInternPool = InternPool([:0]const u8, [:0]const u8, StringContext);
\ No newline at end of file
+pub const StringInternPool = InternPool([:0]const u8, [:0]const u8, StringContext);
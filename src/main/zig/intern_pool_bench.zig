@@ -0,0 +1,105 @@
+// This file is part of MEGATrace.
+//
+// Copyright (C) 2024-2025 The MEGA Team
+// All Rights Reserved
+//
+// The above copyright notice, this permission notice and the word "MEGA"
+// shall be included in all copies or substantial portions of the Software.
+//
+// MEGATrace is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Lesser General Public License as published by
+// the Free Software Foundation, only version 3 of the License.
+//
+// MEGATrace is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public License
+// along with MEGATrace.  If not, see <https://www.gnu.org/licenses/>.
+
+//! Contention benchmark for the intern pools, run with `zig build bench -Doptimize=ReleaseFast`.
+//!
+//! Every thread looks up names that are already interned, which is the steady state for zone names.
+//! With perfect scaling the aggregate throughput grows linearly with the thread count.
+
+const std = @import("std");
+const intern_pool = @import("intern_pool.zig");
+
+const name_count = 512;
+const iterations = 2_000_000;
+const thread_counts = [_]usize{ 1, 2, 4, 8, 16 };
+const max_threads = 16;
+
+/// The previous design: a single map behind a single spinlock.
+const LockedPool = struct {
+    mutex: std.Thread.Mutex = .{},
+    map: std.StringHashMap([:0]const u8),
+
+    fn intern(this: *LockedPool, key: [:0]const u8, value: [:0]const u8) ![:0]const u8 {
+        while (!this.mutex.tryLock()) {}
+        defer this.mutex.unlock();
+        const result = try this.map.getOrPut(key);
+        if (!result.found_existing) {
+            result.value_ptr.* = value;
+        }
+        return result.value_ptr.*;
+    }
+};
+
+fn Worker(comptime Pool: type) type {
+    return struct {
+        fn run(pool: *Pool, names: []const [:0]const u8, seed: usize) void {
+            var i: usize = seed *% 7919;
+            for (0..iterations) |_| {
+                const name = names[i % names.len];
+                const interned = pool.intern(name, name) catch unreachable;
+                std.mem.doNotOptimizeAway(interned.ptr);
+                i +%= 31;
+            }
+        }
+    };
+}
+
+/// Returns the aggregate throughput in million lookups per second.
+fn measure(comptime Pool: type, pool: *Pool, names: []const [:0]const u8, thread_count: usize) !f64 {
+    var threads: [max_threads]std.Thread = undefined;
+    var timer = try std.time.Timer.start();
+    for (threads[0..thread_count], 0..) |*thread, i| {
+        thread.* = try std.Thread.spawn(.{}, Worker(Pool).run, .{ pool, names, i });
+    }
+    for (threads[0..thread_count]) |thread| {
+        thread.join();
+    }
+    const elapsed_ns: f64 = @floatFromInt(timer.read());
+    const total_ops: f64 = @floatFromInt(thread_count * iterations);
+    return total_ops / elapsed_ns * std.time.ns_per_s / 1_000_000;
+}
+
+pub fn main() !void {
+    const allocator = std.heap.page_allocator;
+
+    var names: [name_count][:0]const u8 = undefined;
+    for (&names, 0..) |*name, i| {
+        name.* = try std.fmt.allocPrintZ(allocator, "cl_section_{d}", .{i});
+    }
+
+    var locked = LockedPool{ .map = .init(allocator) };
+    defer locked.map.deinit();
+    var sharded = intern_pool.StringInternPool.init(allocator);
+    defer sharded.deinit();
+
+    // Warm up both pools, so only lookups of existing names are measured
+    for (names) |name| {
+        _ = try locked.intern(name, name);
+        _ = try sharded.intern(name, name);
+    }
+
+    const stdout = std.io.getStdOut().writer();
+    try stdout.print("{s:>8} {s:>14} {s:>14}\n", .{ "threads", "locked Mop/s", "sharded Mop/s" });
+    for (thread_counts) |thread_count| {
+        const locked_mops = try measure(LockedPool, &locked, &names, thread_count);
+        const sharded_mops = try measure(intern_pool.StringInternPool, &sharded, &names, thread_count);
+        try stdout.print("{d:>8} {d:>14.2} {d:>14.2}\n", .{ thread_count, locked_mops, sharded_mops });
+    }
+}